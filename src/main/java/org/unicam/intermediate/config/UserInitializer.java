@@ -9,6 +9,7 @@ import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
+import org.unicam.intermediate.service.TaskAuthorizationService;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -19,6 +20,7 @@ import java.util.stream.Collectors;
 public class UserInitializer {
 
     private final IdentityService identityService;
+    private final TaskAuthorizationService taskAuthorizationService;
 
     @Bean
     @Order(2) // Run after EnvironmentInitializer
@@ -129,6 +131,7 @@ public class UserInitializer {
 
                 identityService.createMembership("lmozzoni", "admins");
                 identityService.createMembership("acataluffi", "admins");
+                taskAuthorizationService.invalidateAllUserGroups();
 
                 // Print summary
                 log.info("[UserInitializer] ========================================");
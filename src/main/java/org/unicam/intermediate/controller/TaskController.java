@@ -38,8 +38,7 @@ public class TaskController {
                 return ResponseEntity.badRequest().body(Response.error("userId is required"));
             }
 
-            Set<String> seenTaskIds = new HashSet<>();
-            List<Map<String, Object>> result = new ArrayList<>();
+            Map<String, Task> tasks = new LinkedHashMap<>();
 
             // Get user's groups
             List<Group> userGroups = identityService.createGroupQuery()
@@ -52,36 +51,27 @@ public class TaskController {
                     .taskAssignee(userId)
                     .active()
                     .list()
-                    .forEach(task -> {
-                        if (seenTaskIds.add(task.getId())) {
-                            result.add(taskTrackingService.enrichedTaskToMap(task));
-                        }
-                    });
+                    .forEach(task -> tasks.putIfAbsent(task.getId(), task));
 
             // Tasks where user is a candidate
             taskService.createTaskQuery()
                     .taskCandidateUser(userId)
                     .active()
                     .list()
-                    .forEach(task -> {
-                        if (seenTaskIds.add(task.getId())) {
-                            result.add(taskTrackingService.enrichedTaskToMap(task));
-                        }
-                    });
+                    .forEach(task -> tasks.putIfAbsent(task.getId(), task));
 
             // Tasks where user's groups are candidates
-            for (String groupId : groupIds) {
+            if (!groupIds.isEmpty()) {
                 taskService.createTaskQuery()
-                        .taskCandidateGroup(groupId)
+                        .taskCandidateGroupIn(groupIds)
                         .active()
                         .list()
-                        .forEach(task -> {
-                            if (seenTaskIds.add(task.getId())) {
-                                result.add(taskTrackingService.enrichedTaskToMap(task));
-                            }
-                        });
+                        .forEach(task -> tasks.putIfAbsent(task.getId(), task));
             }
 
+            // Enrich all tasks at once (participants, task type, destinations)
+            List<Map<String, Object>> result = taskTrackingService.enrichTasks(tasks.values());
+
             // Sort by creation time (newest first)
             result.sort((a, b) -> {
                 Date dateA = (Date) a.get("createTime");
@@ -5,7 +5,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.unicam.intermediate.models.dto.Response;
+import org.unicam.intermediate.service.BusinessKeyExecutor;
+import org.unicam.intermediate.service.SignalDispatcher;
+import org.unicam.intermediate.service.participant.ParticipantPositionService;
 import org.unicam.intermediate.service.websocket.WebSocketSessionManager;
+import org.unicam.intermediate.websocket.HeartbeatScheduler;
+import org.unicam.intermediate.websocket.LocationUpdateCoalescer;
+import org.unicam.intermediate.websocket.OutboundMessageQueue;
+import org.unicam.intermediate.websocket.SessionMessagePipeline;
 
 import java.util.Map;
 
@@ -16,6 +23,13 @@ import java.util.Map;
 public class WebSocketStatusController {
 
     private final WebSocketSessionManager sessionManager;
+    private final SessionMessagePipeline messagePipeline;
+    private final LocationUpdateCoalescer locationCoalescer;
+    private final HeartbeatScheduler heartbeatScheduler;
+    private final OutboundMessageQueue outboundQueue;
+    private final SignalDispatcher signalDispatcher;
+    private final BusinessKeyExecutor businessKeyExecutor;
+    private final ParticipantPositionService positionService;
 
     @GetMapping("/connected/{userId}")
     public ResponseEntity<Response<Boolean>> isUserConnected(@PathVariable String userId) {
@@ -28,7 +42,14 @@ public class WebSocketStatusController {
         Map<String, Object> stats = Map.of(
             "activeSessions", sessionManager.getActiveSessionCount(),
             "connectedUsers", sessionManager.getConnectedUsers().size(),
-            "users", sessionManager.getConnectedUsers()
+            "users", sessionManager.getConnectedUsers(),
+            "pipeline", messagePipeline.getStats(),
+            "locationCoalescing", locationCoalescer.getStats(),
+            "heartbeat", heartbeatScheduler.getStats(),
+            "outbound", outboundQueue.getStats(),
+            "signals", signalDispatcher.getStats(),
+            "businessKeyActors", businessKeyExecutor.getStats(),
+            "positionHistory", positionService.getHistoryStats()
         );
         return ResponseEntity.ok(Response.ok(stats));
     }
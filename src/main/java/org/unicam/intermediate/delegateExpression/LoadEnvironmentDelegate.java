@@ -6,7 +6,13 @@ import org.camunda.bpm.engine.delegate.BpmnError;
 import org.camunda.bpm.engine.delegate.DelegateExecution;
 import org.camunda.bpm.engine.delegate.JavaDelegate;
 import org.springframework.stereotype.Component;
+import org.unicam.intermediate.models.record.EnvironmentDiff;
+import org.unicam.intermediate.models.record.PlaceChange;
+import org.unicam.intermediate.service.environmental.BindingMatcher;
 import org.unicam.intermediate.service.environmental.EnvironmentDataService;
+import org.unicam.intermediate.service.participant.ParticipantPositionService;
+
+import java.util.List;
 
 @Component("loadEnvironmentDelegate")
 @Slf4j
@@ -14,11 +20,22 @@ import org.unicam.intermediate.service.environmental.EnvironmentDataService;
 public class LoadEnvironmentDelegate implements JavaDelegate {
 
     private final EnvironmentDataService environmentDataService;
+    private final ParticipantPositionService positionService;
+    private final BindingMatcher bindingMatcher;
 
     @Override
     public void execute(DelegateExecution execution) {
         try {
-            environmentDataService.reloadEnvironment();
+            EnvironmentDiff diff = environmentDataService.reloadEnvironment();
+
+            // Attribute-only changes (e.g. freeSeats) cannot move anybody to another place
+            if (diff.geometryChanged()) {
+                List<PlaceChange> changes = positionService.reconcilePlaces();
+                log.info("[LoadEnvironmentDelegate] Polygons changed, {} participants moved to another place",
+                        changes.size());
+                // Moving a polygon can put two waiting participants in the same place
+                changes.forEach(change -> bindingMatcher.onPlaceChanged(change.participantId()));
+            }
         } catch (Exception e) {
             log.error("[LoadEnvironmentDelegate] Failed to reload environment: {}", e.getMessage());
             throw new BpmnError("LoadEnvironmentError", "Failed to reload environment");
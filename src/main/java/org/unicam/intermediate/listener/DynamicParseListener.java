@@ -2,6 +2,8 @@ package org.unicam.intermediate.listener;
 
 import lombok.extern.slf4j.Slf4j;
 import org.camunda.bpm.engine.delegate.ExecutionListener;
+import org.camunda.bpm.engine.delegate.TaskListener;
+import org.camunda.bpm.engine.impl.bpmn.behavior.UserTaskActivityBehavior;
 import org.camunda.bpm.engine.impl.bpmn.listener.DelegateExpressionExecutionListener;
 import org.camunda.bpm.engine.impl.bpmn.parser.AbstractBpmnParseListener;
 import org.camunda.bpm.engine.impl.context.Context;
@@ -9,12 +11,14 @@ import org.camunda.bpm.engine.impl.el.ExpressionManager;
 import org.camunda.bpm.engine.impl.persistence.entity.ProcessDefinitionEntity;
 import org.camunda.bpm.engine.impl.pvm.process.ActivityImpl;
 import org.camunda.bpm.engine.impl.pvm.process.ScopeImpl;
+import org.camunda.bpm.engine.impl.task.listener.DelegateExpressionTaskListener;
 import org.camunda.bpm.engine.impl.util.xml.Element;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.unicam.intermediate.activity.WaitStateActivity;
 import org.unicam.intermediate.service.MessageFlowRegistry;
+import org.unicam.intermediate.service.ProcessMetadataCache;
 import org.unicam.intermediate.utils.Constants;
 
 import java.util.Collections;
@@ -29,10 +33,34 @@ public class DynamicParseListener extends AbstractBpmnParseListener {
     @Lazy  // Break circular dependency
     private MessageFlowRegistry messageFlowRegistry;
 
+    @Autowired
+    @Lazy
+    private ProcessMetadataCache processMetadataCache;
+
     @Override
     public void parseProcess(Element processElement, ProcessDefinitionEntity processDefinition) {
         // Message flow registration will be done post-deployment
         log.debug("[DynamicParseListener] Process parsed: {}", processDefinition.getId());
+        // Redeploy: drop the task metadata of the older versions, the new one is loaded on first use
+        processMetadataCache.invalidate(processDefinition.getKey());
+
+        // Process end: lets the per-business-key state be released when the last instance ends
+        ExpressionManager exprMgr = Context.getProcessEngineConfiguration().getExpressionManager();
+        var expression = exprMgr.createExpression("${" + processEndExecutionListenerBeanName + "}");
+        processDefinition.addListener(ExecutionListener.EVENTNAME_END,
+                new DelegateExpressionExecutionListener(expression, Collections.emptyList()));
+    }
+
+    @Override
+    public void parseUserTask(Element userTaskElement, ScopeImpl scope, ActivityImpl activity) {
+        // New or reassigned tasks can make a participant claimable for the auto-discovery
+        if (activity.getActivityBehavior() instanceof UserTaskActivityBehavior behavior) {
+            ExpressionManager exprMgr = Context.getProcessEngineConfiguration().getExpressionManager();
+            var expression = exprMgr.createExpression("${" + discoveryTaskListenerBeanName + "}");
+            TaskListener listener = new DelegateExpressionTaskListener(expression, Collections.emptyList());
+            behavior.getTaskDefinition().addTaskListener(TaskListener.EVENTNAME_CREATE, listener);
+            behavior.getTaskDefinition().addTaskListener(TaskListener.EVENTNAME_ASSIGNMENT, listener);
+        }
     }
 
     @Override
@@ -6,12 +6,14 @@ import org.camunda.bpm.engine.delegate.ExecutionListener;
 import org.springframework.stereotype.Component;
 import org.unicam.intermediate.models.Participant;
 import org.unicam.intermediate.models.enums.TaskType;
+import org.unicam.intermediate.service.environmental.movement.MovementExecutionIndex;
 import org.unicam.intermediate.service.participant.ParticipantService;
 import org.unicam.intermediate.service.participant.UserParticipantMappingService;
 import org.unicam.intermediate.service.xml.AbstractXmlService;
 import org.unicam.intermediate.service.xml.XmlServiceDispatcher;
 
 import static org.unicam.intermediate.utils.Constants.*;
+import static org.unicam.intermediate.utils.EngineTransactions.afterCommit;
 
 @Slf4j
 @Component(movementExecutionListenerBeanName)
@@ -20,13 +22,16 @@ public class MovementExecutionListener implements ExecutionListener {
     private final XmlServiceDispatcher dispatcher;
     private final ParticipantService participantService;
     private final UserParticipantMappingService userParticipantMapping;
+    private final MovementExecutionIndex movementIndex;
 
     public MovementExecutionListener(XmlServiceDispatcher dispatcher,
                                      ParticipantService participantService,
-                                     UserParticipantMappingService userParticipantMapping) {
+                                     UserParticipantMappingService userParticipantMapping,
+                                     MovementExecutionIndex movementIndex) {
         this.dispatcher = dispatcher;
         this.participantService = participantService;
         this.userParticipantMapping = userParticipantMapping;
+        this.movementIndex = movementIndex;
     }
 
     @Override
@@ -66,6 +71,11 @@ public class MovementExecutionListener implements ExecutionListener {
                     userId, participant.getId(), businessKey);
         }
 
+        MovementExecutionIndex.WaitingMovement movement = new MovementExecutionIndex.WaitingMovement(
+                execution.getId(), execution.getProcessInstanceId(), activityId, businessKey,
+                participant != null ? participant.getId() : null, value);
+        afterCommit(() -> movementIndex.register(movement));
+
         String activityName = execution.getCurrentActivityName();
         
         log.info("[MOVEMENT] WAITING | Activity: {} - {} | Participant: {} | Reason: Waiting for GPS coordinates to reach: {}", 
@@ -79,5 +89,8 @@ public class MovementExecutionListener implements ExecutionListener {
         AbstractXmlService svc = dispatcher.get(SPACE_NS.getNamespaceUri(), TaskType.MOVEMENT);
         String raw = svc.extractRaw(execution);
         svc.restoreInstanceValue(execution, raw);
+
+        String executionId = execution.getId();
+        afterCommit(() -> movementIndex.unregister(executionId));
     }
 }
\ No newline at end of file
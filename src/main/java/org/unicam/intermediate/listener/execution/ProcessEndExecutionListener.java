@@ -0,0 +1,54 @@
+package org.unicam.intermediate.listener.execution;
+
+import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+import org.springframework.stereotype.Component;
+import org.unicam.intermediate.service.participant.UserParticipantMappingService;
+
+import static org.unicam.intermediate.utils.Constants.processEndExecutionListenerBeanName;
+import static org.unicam.intermediate.utils.EngineTransactions.afterCommit;
+
+/**
+ * End listener of every parsed process: once the last instance of a business key has ended,
+ * the user/participant mappings of that business key are evicted.
+ */
+@Slf4j
+@Component(processEndExecutionListenerBeanName)
+public class ProcessEndExecutionListener implements ExecutionListener {
+
+    private final RuntimeService runtimeService;
+    private final UserParticipantMappingService userParticipantMapping;
+
+    public ProcessEndExecutionListener(RuntimeService runtimeService,
+                                       UserParticipantMappingService userParticipantMapping) {
+        this.runtimeService = runtimeService;
+        this.userParticipantMapping = userParticipantMapping;
+    }
+
+    @Override
+    public void notify(DelegateExecution execution) {
+        String businessKey = execution.getBusinessKey();
+        if (businessKey == null || !EVENTNAME_END.equals(execution.getEventName())) {
+            return;
+        }
+        // The ended instance is only gone from the runtime tables once its transaction commits
+        afterCommit(() -> evictIfLastInstance(businessKey));
+    }
+
+    private void evictIfLastInstance(String businessKey) {
+        try {
+            long remaining = runtimeService.createProcessInstanceQuery()
+                    .processInstanceBusinessKey(businessKey)
+                    .count();
+            if (remaining == 0) {
+                userParticipantMapping.evictBusinessKey(businessKey);
+            } else {
+                log.debug("[ProcessEnd] {} instances still running for BK {}", remaining, businessKey);
+            }
+        } catch (Exception e) {
+            log.error("[ProcessEnd] Failed to evict state of BK {}: {}", businessKey, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.unicam.intermediate.listener.task;
+
+import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.delegate.DelegateTask;
+import org.camunda.bpm.engine.delegate.TaskListener;
+import org.springframework.stereotype.Component;
+import org.unicam.intermediate.service.participant.UserParticipantMappingService;
+
+import static org.unicam.intermediate.utils.Constants.discoveryTaskListenerBeanName;
+import static org.unicam.intermediate.utils.EngineTransactions.afterCommit;
+
+/**
+ * Create/assignment listener of every user task: a new or reassigned task may make a participant
+ * claimable, so the failed discoveries of its business key are retried on the next update.
+ */
+@Slf4j
+@Component(discoveryTaskListenerBeanName)
+public class DiscoveryTaskListener implements TaskListener {
+
+    private final UserParticipantMappingService userParticipantMapping;
+
+    public DiscoveryTaskListener(UserParticipantMappingService userParticipantMapping) {
+        this.userParticipantMapping = userParticipantMapping;
+    }
+
+    @Override
+    public void notify(DelegateTask delegateTask) {
+        String businessKey = delegateTask.getExecution() != null
+                ? delegateTask.getExecution().getProcessBusinessKey()
+                : null;
+        log.debug("[DiscoveryTaskListener] Task {} {} in BK {}",
+                delegateTask.getTaskDefinitionKey(), delegateTask.getEventName(), businessKey);
+        // Only once committed: a discovery running before would not see the task yet
+        afterCommit(() -> userParticipantMapping.invalidateDiscovery(businessKey));
+    }
+}
@@ -9,6 +9,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.Instant;
+import java.util.List;
 
 @Data
 @AllArgsConstructor
@@ -16,6 +17,7 @@ import java.time.Instant;
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
 @JsonSubTypes({
         @JsonSubTypes.Type(value = GpsMessage.LocationUpdate.class, name = "LOCATION_UPDATE"),
+        @JsonSubTypes.Type(value = GpsMessage.LocationBatch.class, name = "LOCATION_BATCH"),
         @JsonSubTypes.Type(value = GpsMessage.Heartbeat.class, name = "HEARTBEAT"),
         @JsonSubTypes.Type(value = GpsMessage.StartTracking.class, name = "START_TRACKING"),
         @JsonSubTypes.Type(value = GpsMessage.StopTracking.class, name = "STOP_TRACKING")
@@ -43,6 +45,32 @@ public abstract class GpsMessage {
         }
     }
 
+    /**
+     * Samples buffered by the client (e.g. background tracking), processed by the server as one unit
+     */
+    @Data
+    @NoArgsConstructor
+    public static class LocationBatch extends GpsMessage {
+        private List<LocationSample> samples;
+        private String businessKey;
+        private String processInstanceId;
+
+        public LocationBatch(List<LocationSample> samples) {
+            super("LOCATION_BATCH", Instant.now());
+            this.samples = samples;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LocationSample {
+        private Double lat;
+        private Double lon;
+        private Double accuracy;
+        private Instant timestamp;
+    }
+
     @Data
     @NoArgsConstructor
     public static class Heartbeat extends GpsMessage {
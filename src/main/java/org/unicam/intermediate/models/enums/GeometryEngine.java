@@ -0,0 +1,11 @@
+package org.unicam.intermediate.models.enums;
+
+/**
+ * Point-in-polygon implementation used by {@link org.unicam.intermediate.models.environmental.LocationArea}
+ */
+public enum GeometryEngine {
+    // Hand-rolled vertex/edge/winding-number test with a 1e-9 tolerance
+    WINDING_NUMBER,
+    // JTS PreparedPolygon with a cached IndexedPointInAreaLocator (exact boundary test)
+    JTS_PREPARED
+}
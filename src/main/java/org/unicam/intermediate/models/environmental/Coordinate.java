@@ -9,10 +9,14 @@ public class Coordinate {
         public final String destination;
 
         public Coordinate(double lat, double lon, String destination) {
+            this(lat, lon, destination, Instant.now());
+        }
+
+        public Coordinate(double lat, double lon, String destination, Instant timestamp) {
             this.lat = lat;
             this.lon = lon;
             this.destination = destination;
-            this.timestamp = Instant.now();
+            this.timestamp = timestamp;
         }
 
         @Override
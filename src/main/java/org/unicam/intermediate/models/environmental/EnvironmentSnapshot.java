@@ -0,0 +1,177 @@
+package org.unicam.intermediate.models.environmental;
+
+import lombok.Getter;
+import org.unicam.intermediate.models.pojo.Edge;
+import org.unicam.intermediate.models.pojo.EnvironmentData;
+import org.unicam.intermediate.models.pojo.LogicalPlace;
+import org.unicam.intermediate.models.pojo.Place;
+import org.unicam.intermediate.models.pojo.View;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Immutable view of one loaded environment: the element lists, id lookup tables and the
+ * spatial structures built over the places. A reload builds a new snapshot and swaps the
+ * reference, so readers always see a consistent environment without locking.
+ */
+@Getter
+public final class EnvironmentSnapshot {
+
+    private static final EnvironmentSnapshot EMPTY = new EnvironmentSnapshot(new EnvironmentData(), null, null, null);
+
+    private final EnvironmentData data;
+
+    private final List<Place> places;
+    private final List<Edge> edges;
+    private final List<LogicalPlace> logicalPlaces;
+    private final List<View> views;
+
+    private final Map<String, Place> placesById;
+    private final Map<String, LogicalPlace> logicalPlacesById;
+    private final Map<String, View> viewsById;
+
+    // Spatial index over the place polygons and the cell grid cached on top of it
+    private final PlaceSpatialIndex placeIndex;
+    private final PlaceCellGrid placeGrid;
+
+    // Place id -> the place itself followed by the places connected to it through an edge
+    private final Map<String, List<Place>> neighbourhoods;
+
+    // previous is the snapshot the places were derived from: with no reshaped positions only their attributes changed
+    private EnvironmentSnapshot(EnvironmentData source, EnvironmentSnapshot previous, int[] reshaped,
+                                PlaceCellGrid.Layout gridLayout) {
+        this.places = copyOf(source.getPlaces());
+        this.edges = copyOf(source.getEdges());
+        this.logicalPlaces = copyOf(source.getLogicalPlaces());
+        this.views = copyOf(source.getViews());
+
+        this.data = new EnvironmentData();
+        this.data.setPlaces(places);
+        this.data.setEdges(edges);
+        this.data.setLogicalPlaces(logicalPlaces);
+        this.data.setViews(views);
+
+        this.placesById = indexById(places, Place::getId);
+        this.logicalPlacesById = indexById(logicalPlaces, LogicalPlace::getId);
+        this.viewsById = indexById(views, View::getId);
+
+        if (previous != null && reshaped.length == 0) {
+            // Only attributes changed: keep the packed tree and the classified cells
+            this.placeIndex = previous.placeIndex.withPlaces(places);
+            this.placeGrid = previous.placeGrid.withPlaces(places, placeIndex);
+        } else if (previous != null) {
+            // Some polygons changed in place: repack the tree (bounding boxes only), classify only their cells
+            this.placeIndex = new PlaceSpatialIndex(places);
+            PlaceCellGrid updated = previous.placeGrid.withReshaped(places, placeIndex, reshaped);
+            this.placeGrid = updated != null ? updated : PlaceCellGrid.build(places, placeIndex);
+        } else {
+            this.placeIndex = places.isEmpty() ? PlaceSpatialIndex.empty() : new PlaceSpatialIndex(places);
+            this.placeGrid = gridLayout != null
+                    ? PlaceCellGrid.restore(places, placeIndex, gridLayout)
+                    : PlaceCellGrid.build(places, placeIndex);
+        }
+        this.neighbourhoods = buildNeighbourhoods(places, edges);
+    }
+
+    /**
+     * Builds a snapshot of the given data. Place areas must already be compiled.
+     */
+    public static EnvironmentSnapshot of(EnvironmentData data) {
+        return new EnvironmentSnapshot(data, null, null, null);
+    }
+
+    /**
+     * Builds a snapshot reusing a grid layout precomputed for exactly these places (binary environment format)
+     */
+    public static EnvironmentSnapshot of(EnvironmentData data, PlaceCellGrid.Layout gridLayout) {
+        return new EnvironmentSnapshot(data, null, null, gridLayout);
+    }
+
+    /**
+     * Builds a snapshot whose places have exactly the geometry, order and areas of this one
+     * (only their attributes changed), reusing the spatial structures instead of rebuilding them
+     */
+    public EnvironmentSnapshot withSameGeometry(EnvironmentData data) {
+        return new EnvironmentSnapshot(data, this, new int[0], null);
+    }
+
+    /**
+     * Builds a snapshot whose places are the ones of this snapshot in the same order, where only the
+     * polygons at the {@code reshaped} positions changed: the grid cells they cover before and after
+     * are classified again and the others are reused. The grid is rebuilt if a polygon grew past its extent.
+     */
+    public EnvironmentSnapshot withReshapedPlaces(EnvironmentData data, int[] reshaped) {
+        return new EnvironmentSnapshot(data, this, reshaped, null);
+    }
+
+    public static EnvironmentSnapshot empty() {
+        return EMPTY;
+    }
+
+    public Optional<Place> findPlaceById(String placeId) {
+        return placeId != null ? Optional.ofNullable(placesById.get(placeId)) : Optional.empty();
+    }
+
+    public Optional<LogicalPlace> findLogicalPlaceById(String logicalPlaceId) {
+        return logicalPlaceId != null ? Optional.ofNullable(logicalPlacesById.get(logicalPlaceId)) : Optional.empty();
+    }
+
+    public Optional<View> findViewById(String viewId) {
+        return viewId != null ? Optional.ofNullable(viewsById.get(viewId)) : Optional.empty();
+    }
+
+    public boolean isEmpty() {
+        return places.isEmpty();
+    }
+
+    private static <T> List<T> copyOf(List<T> list) {
+        return list != null ? list.stream().filter(Objects::nonNull).toList() : List.of();
+    }
+
+    // Ids are expected to be unique; on duplicates the first element wins, as with the old linear scan
+    private static <T> Map<String, T> indexById(List<T> elements, Function<T, String> id) {
+        Map<String, T> result = new HashMap<>();
+        for (T element : elements) {
+            String key = id.apply(element);
+            if (key != null) {
+                result.putIfAbsent(key, element);
+            }
+        }
+        return Map.copyOf(result);
+    }
+
+    private static Map<String, List<Place>> buildNeighbourhoods(List<Place> places, List<Edge> edges) {
+        Map<String, List<Place>> result = new LinkedHashMap<>();
+        for (Place place : places) {
+            if (place.getId() != null && place.getLocationArea() != null) {
+                result.putIfAbsent(place.getId(), new ArrayList<>(List.of(place)));
+            }
+        }
+
+        for (Edge edge : edges) {
+            List<Place> source = result.get(edge.getSource());
+            List<Place> target = result.get(edge.getTarget());
+            if (source == null || target == null || source == target) {
+                continue;
+            }
+            // Edges are walkable both ways
+            if (!source.contains(target.get(0))) {
+                source.add(target.get(0));
+            }
+            if (!target.contains(source.get(0))) {
+                target.add(source.get(0));
+            }
+        }
+
+        Map<String, List<Place>> frozen = new HashMap<>();
+        result.forEach((id, neighbourhood) -> frozen.put(id, List.copyOf(neighbourhood)));
+        return Map.copyOf(frozen);
+    }
+}
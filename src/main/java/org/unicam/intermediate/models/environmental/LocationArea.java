@@ -3,8 +3,15 @@
 package org.unicam.intermediate.models.environmental;
 
 import java.util.List;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.locationtech.jts.algorithm.locate.PointOnGeometryLocator;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+import org.unicam.intermediate.models.enums.GeometryEngine;
 
 @Slf4j
 @Getter
@@ -13,55 +20,179 @@ public class LocationArea {
     private final double minX, maxX, minY, maxY;
 
     // Tolleranza per confronti floating point (importante per coordinate GPS)
-    private static final double EPSILON = 1e-9;
+    public static final double EPSILON = 1e-9;
+
+    // Raggio medio terrestre, usato per convertire gradi in metri
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    // Compiled polygon: packed vertices (x = lon, y = lat) and the delta to the next vertex
+    @Getter(AccessLevel.NONE)
+    private final double[] xs, ys, dxs, dys;
+
+    private final GeometryEngine engine;
+
+    // Only set for GeometryEngine.JTS_PREPARED; the locator is cached because the getter is synchronized
+    @Getter(AccessLevel.NONE)
+    private final PointOnGeometryLocator pointLocator;
 
     public LocationArea(List<List<Double>> coordinates) {
+        this(coordinates, GeometryEngine.WINDING_NUMBER);
+    }
+
+    public LocationArea(List<List<Double>> coordinates, GeometryEngine engine) {
         this.coordinates = coordinates;
 
-        this.minX = coordinates.stream().mapToDouble(c -> c.get(0)).min().orElse(0);
-        this.maxX = coordinates.stream().mapToDouble(c -> c.get(0)).max().orElse(0);
-        this.minY = coordinates.stream().mapToDouble(c -> c.get(1)).min().orElse(0);
-        this.maxY = coordinates.stream().mapToDouble(c -> c.get(1)).max().orElse(0);
+        int n = coordinates.size();
+        if (coordinates instanceof PackedCoordinates packed) {
+            // Already primitive (streaming/binary loader): share the arrays instead of unboxing
+            this.xs = packed.lons();
+            this.ys = packed.lats();
+        } else {
+            this.xs = new double[n];
+            this.ys = new double[n];
+            for (int i = 0; i < n; i++) {
+                List<Double> coord = coordinates.get(i);
+                xs[i] = coord.get(0);
+                ys[i] = coord.get(1);
+            }
+        }
+
+        this.dxs = new double[n];
+        this.dys = new double[n];
+        double minX = n > 0 ? xs[0] : 0, maxX = minX;
+        double minY = n > 0 ? ys[0] : 0, maxY = minY;
+        for (int i = 0; i < n; i++) {
+            int next = (i + 1) % n;
+            dxs[i] = xs[next] - xs[i];
+            dys[i] = ys[next] - ys[i];
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+
+        this.pointLocator = engine == GeometryEngine.JTS_PREPARED ? createPointLocator() : null;
+        this.engine = pointLocator != null ? GeometryEngine.JTS_PREPARED : GeometryEngine.WINDING_NUMBER;
+
+        log.debug("Created LocationArea ({}) - BBox: lon[{}, {}], lat[{}, {}]",
+                this.engine, minX, maxX, minY, maxY);
+    }
+
+    private PointOnGeometryLocator createPointLocator() {
+        try {
+            return new PreparedPolygon(toPolygon()).getPointLocator();
+        } catch (IllegalArgumentException e) {
+            log.warn("Cannot build JTS polygon ({}), falling back to winding number test", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Upper bound on how far outside the polygon a point can still be reported as contained.
+     * The winding engine's edge check thresholds the cross product, so a point within the
+     * bounding box of an edge of length L counts as on it up to EPSILON / L away: the
+     * distance is bounded by min(L, EPSILON / L), i.e. by sqrt(EPSILON).
+     */
+    public double getBoundaryTolerance() {
+        return pointLocator != null ? EPSILON : Math.sqrt(EPSILON);
+    }
 
-        log.debug("Created LocationArea - BBox: lon[{}, {}], lat[{}, {}]",
-                minX, maxX, minY, maxY);
+    /**
+     * Builds the JTS polygon (x = lon, y = lat) of this area, closing the ring if needed
+     */
+    public Polygon toPolygon() {
+        int n = xs.length;
+        boolean closed = n > 0 && xs[0] == xs[n - 1] && ys[0] == ys[n - 1];
+        org.locationtech.jts.geom.Coordinate[] ring = new org.locationtech.jts.geom.Coordinate[closed ? n : n + 1];
+        for (int i = 0; i < n; i++) {
+            ring[i] = new org.locationtech.jts.geom.Coordinate(xs[i], ys[i]);
+        }
+        if (!closed) {
+            ring[n] = ring[0].copy();
+        }
+        return GEOMETRY_FACTORY.createPolygon(ring);
     }
 
     /**
-     * Main contains method with vertex handling
+     * Main contains method with vertex handling. Runs on the compiled arrays without allocating.
      */
     public boolean contains(double lat, double lon) {
-        log.trace("Checking point ({}, {}) in polygon", lat, lon);
+        // 0. Bounding box early reject (widened by the vertex tolerance)
+        if (lon < minX - EPSILON || lon > maxX + EPSILON || lat < minY - EPSILON || lat > maxY + EPSILON) {
+            return false;
+        }
+
+        if (pointLocator != null) {
+            // Boundary points count as inside, like the vertex/edge checks below
+            return pointLocator.locate(new org.locationtech.jts.geom.Coordinate(lon, lat)) != Location.EXTERIOR;
+        }
 
         // 1. First check if point is exactly a vertex
         if (isVertex(lat, lon)) {
-            log.debug("Point is a vertex of the polygon - returning true");
+            if (log.isDebugEnabled()) {
+                log.debug("Point ({}, {}) is a vertex of the polygon - returning true", lat, lon);
+            }
             return true;
         }
 
         // 2. Check if point is on an edge
         if (isOnEdge(lat, lon)) {
-            log.debug("Point is on an edge of the polygon - returning true");
+            if (log.isDebugEnabled()) {
+                log.debug("Point ({}, {}) is on an edge of the polygon - returning true", lat, lon);
+            }
             return true;
         }
 
         // 3. Check if point is inside using winding number
         boolean inside = windingNumberTest(lat, lon);
-        log.trace("Winding number test result: {}", inside);
+        if (log.isTraceEnabled()) {
+            log.trace("Winding number test result for ({}, {}): {}", lat, lon, inside);
+        }
 
         return inside;
     }
 
+    /**
+     * Approximate distance in meters from the point to the area (0 when contained).
+     * Uses a local equirectangular projection, accurate enough at room scale.
+     */
+    public double distanceMeters(double lat, double lon) {
+        if (contains(lat, lon)) {
+            return 0;
+        }
+
+        double metersPerDegreeLat = Math.toRadians(EARTH_RADIUS_METERS);
+        double metersPerDegreeLon = metersPerDegreeLat * Math.cos(Math.toRadians(lat));
+
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < xs.length; i++) {
+            // Edge i in meters, relative to the point
+            double ax = (xs[i] - lon) * metersPerDegreeLon;
+            double ay = (ys[i] - lat) * metersPerDegreeLat;
+            double bx = dxs[i] * metersPerDegreeLon;
+            double by = dys[i] * metersPerDegreeLat;
+
+            double length2 = bx * bx + by * by;
+            double t = length2 > 0 ? Math.max(0, Math.min(1, -(ax * bx + ay * by) / length2)) : 0;
+            double px = ax + t * bx;
+            double py = ay + t * by;
+            best = Math.min(best, px * px + py * py);
+        }
+        return Math.sqrt(best);
+    }
+
     /**
      * Check if point is exactly a vertex
      */
     private boolean isVertex(double lat, double lon) {
-        for (List<Double> coord : coordinates) {
-            double vLon = coord.get(0);
-            double vLat = coord.get(1);
-
-            if (Math.abs(vLon - lon) < EPSILON && Math.abs(vLat - lat) < EPSILON) {
-                log.debug("Point matches vertex at ({}, {})", vLat, vLon);
+        for (int i = 0; i < xs.length; i++) {
+            if (Math.abs(xs[i] - lon) < EPSILON && Math.abs(ys[i] - lat) < EPSILON) {
                 return true;
             }
         }
@@ -72,26 +203,22 @@ public class LocationArea {
      * Check if point is on an edge of the polygon
      */
     private boolean isOnEdge(double lat, double lon) {
-        int n = coordinates.size();
+        int n = xs.length;
 
         for (int i = 0; i < n; i++) {
-            List<Double> p1 = coordinates.get(i);
-            List<Double> p2 = coordinates.get((i + 1) % n);
-
-            double x1 = p1.get(0); // lon1
-            double y1 = p1.get(1); // lat1
-            double x2 = p2.get(0); // lon2
-            double y2 = p2.get(1); // lat2
+            double x1 = xs[i]; // lon1
+            double y1 = ys[i]; // lat1
 
             // Check if point is on the line segment
-            double crossProduct = (lat - y1) * (x2 - x1) - (lon - x1) * (y2 - y1);
+            double crossProduct = (lat - y1) * dxs[i] - (lon - x1) * dys[i];
 
             if (Math.abs(crossProduct) < EPSILON) {
+                int next = (i + 1) % n;
+                double x2 = xs[next]; // lon2
+                double y2 = ys[next]; // lat2
                 // Point is on the line, check if it's within the segment
                 if (Math.min(x1, x2) <= lon && lon <= Math.max(x1, x2) &&
                         Math.min(y1, y2) <= lat && lat <= Math.max(y1, y2)) {
-                    log.debug("Point is on edge between ({}, {}) and ({}, {})",
-                            y1, x1, y2, x2);
                     return true;
                 }
             }
@@ -104,26 +231,21 @@ public class LocationArea {
      */
     private boolean windingNumberTest(double lat, double lon) {
         int wn = 0;
-        int n = coordinates.size();
+        int n = xs.length;
 
         for (int i = 0; i < n; i++) {
-            List<Double> p1 = coordinates.get(i);
-            List<Double> p2 = coordinates.get((i + 1) % n);
-
-            double x1 = p1.get(0); // lon
-            double y1 = p1.get(1); // lat
-            double x2 = p2.get(0);
-            double y2 = p2.get(1);
+            double y1 = ys[i]; // lat
+            double y2 = ys[(i + 1) % n];
 
             if (y1 <= lat) {
                 if (y2 > lat) { // upward crossing
-                    if (isLeft(x1, y1, x2, y2, lon, lat) > 0) {
+                    if (isLeft(i, lon, lat) > 0) {
                         wn++;
                     }
                 }
             } else {
                 if (y2 <= lat) { // downward crossing
-                    if (isLeft(x1, y1, x2, y2, lon, lat) < 0) {
+                    if (isLeft(i, lon, lat) < 0) {
                         wn--;
                     }
                 }
@@ -134,10 +256,10 @@ public class LocationArea {
     }
 
     /**
-     * Test if point is left/on/right of an infinite line
+     * Test if point is left/on/right of the infinite line through edge i
      */
-    private double isLeft(double x0, double y0, double x1, double y1, double px, double py) {
-        return ((x1 - x0) * (py - y0) - (px - x0) * (y1 - y0));
+    private double isLeft(int i, double px, double py) {
+        return (dxs[i] * (py - ys[i]) - (px - xs[i]) * dys[i]);
     }
 
     public void debugContains(double lat, double lon) {
@@ -0,0 +1,64 @@
+package org.unicam.intermediate.models.environmental;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only {@code List<List<Double>>} of [lon, lat] pairs backed by two primitive arrays.
+ * Used by the streaming and binary loaders so large environments are not held as boxed
+ * nested lists; a [lon, lat] pair is only boxed when a caller actually walks the list.
+ * The arrays are owned by this list and must not be modified after construction.
+ */
+public final class PackedCoordinates extends AbstractList<List<Double>> {
+
+    private final double[] lons;
+    private final double[] lats;
+
+    public PackedCoordinates(double[] lons, double[] lats) {
+        if (lons.length != lats.length) {
+            throw new IllegalArgumentException("lon/lat arrays differ in length: " + lons.length + " vs " + lats.length);
+        }
+        this.lons = lons;
+        this.lats = lats;
+    }
+
+    @Override
+    public List<Double> get(int index) {
+        return List.of(lons[index], lats[index]);
+    }
+
+    @Override
+    public int size() {
+        return lons.length;
+    }
+
+    // Direct access for loaders and LocationArea; callers must not modify the arrays
+
+    public double[] lons() {
+        return lons;
+    }
+
+    public double[] lats() {
+        return lats;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof PackedCoordinates packed) {
+            return Arrays.equals(lons, packed.lons) && Arrays.equals(lats, packed.lats);
+        }
+        return super.equals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        // Same value as List.hashCode() over the boxed [lon, lat] pairs
+        int hash = 1;
+        for (int i = 0; i < lons.length; i++) {
+            int pair = 31 * (31 + Double.hashCode(lons[i])) + Double.hashCode(lats[i]);
+            hash = 31 * hash + pair;
+        }
+        return hash;
+    }
+}
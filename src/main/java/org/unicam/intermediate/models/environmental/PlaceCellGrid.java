@@ -0,0 +1,338 @@
+package org.unicam.intermediate.models.environmental;
+
+import lombok.extern.slf4j.Slf4j;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.unicam.intermediate.models.pojo.Place;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Fixed-size lat/lon grid laid over the extent of the environment places.
+ * For every cell the places that fully cover it or only partially overlap it are
+ * precomputed once, so a lookup in the interior of a room needs no polygon test at all
+ * and only cells crossed by a room border fall back to the exact contains() check.
+ * Cells crowded with more than {@value #MAX_CELL_CANDIDATES} places defer to the R-tree.
+ */
+@Slf4j
+public class PlaceCellGrid {
+
+    // Roughly 8x8 cells per place on average, capped to keep the grid small for huge campuses
+    private static final int CELLS_PER_PLACE = 64;
+    private static final int MAX_CELLS = 1 << 20;
+    private static final int MAX_CELL_CANDIDATES = 16;
+
+    // Shrinks/grows cell envelopes past floating point rounding of the cell arithmetic
+    private static final double CELL_MARGIN = 1e-12;
+
+    private static final int[] NO_CANDIDATES = new int[0];
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    private final List<Place> places;
+    private final PlaceSpatialIndex fallback;
+
+    private final double originX, originY, cellWidth, cellHeight;
+    private final int cols, rows;
+
+    // Per cell: place ordinals in ascending order, encoded as (ordinal << 1) | fullyCovered.
+    // A null cell has too many candidates and is answered by the fallback index.
+    private final int[][] cells;
+
+    private PlaceCellGrid(List<Place> places, PlaceSpatialIndex fallback) {
+        this.places = List.copyOf(places);
+        this.fallback = fallback;
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Place place : this.places) {
+            LocationArea area = place.getLocationArea();
+            if (area == null) continue;
+            double tolerance = area.getBoundaryTolerance();
+            minX = Math.min(minX, area.getMinX() - tolerance);
+            maxX = Math.max(maxX, area.getMaxX() + tolerance);
+            minY = Math.min(minY, area.getMinY() - tolerance);
+            maxY = Math.max(maxY, area.getMaxY() + tolerance);
+        }
+
+        if (minX > maxX) {
+            // No place has an area: every lookup misses
+            this.originX = this.originY = 0;
+            this.cellWidth = this.cellHeight = 1;
+            this.cols = this.rows = 0;
+            this.cells = new int[0][];
+            return;
+        }
+
+        double width = Math.max(maxX - minX, LocationArea.EPSILON);
+        double height = Math.max(maxY - minY, LocationArea.EPSILON);
+        long targetCells = Math.max(1, Math.min((long) this.places.size() * CELLS_PER_PLACE, MAX_CELLS));
+        double cellSize = Math.sqrt(width * height / targetCells);
+
+        this.originX = minX;
+        this.originY = minY;
+        this.cols = (int) Math.max(1, Math.min(Math.ceil(width / cellSize), MAX_CELLS));
+        this.rows = (int) Math.max(1, Math.min(Math.ceil(height / cellSize), MAX_CELLS / cols));
+        this.cellWidth = width / cols;
+        this.cellHeight = height / rows;
+        this.cells = new int[cols * rows][];
+        Arrays.fill(cells, NO_CANDIDATES);
+
+        int[] sizes = new int[cells.length];
+        for (int ordinal = 0; ordinal < this.places.size(); ordinal++) {
+            LocationArea area = this.places.get(ordinal).getLocationArea();
+            if (area != null) {
+                classify(ordinal, area, sizes);
+            }
+        }
+
+        int crowded = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (sizes[i] > MAX_CELL_CANDIDATES) {
+                cells[i] = null;
+                crowded++;
+            } else if (cells[i].length != sizes[i]) {
+                cells[i] = Arrays.copyOf(cells[i], sizes[i]);
+            }
+        }
+
+        log.debug("Created PlaceCellGrid {}x{} over {} places ({} crowded cells)",
+                cols, rows, this.places.size(), crowded);
+    }
+
+    private PlaceCellGrid(Layout layout, List<Place> places, PlaceSpatialIndex fallback) {
+        if (layout.cells().length != layout.cols() * layout.rows()) {
+            throw new IllegalArgumentException("Grid layout has " + layout.cells().length + " cells, expected "
+                    + layout.cols() + "x" + layout.rows());
+        }
+        this.places = List.copyOf(places);
+        this.fallback = fallback;
+        this.originX = layout.originX();
+        this.originY = layout.originY();
+        this.cellWidth = layout.cellWidth();
+        this.cellHeight = layout.cellHeight();
+        this.cols = layout.cols();
+        this.rows = layout.rows();
+        this.cells = layout.cells();
+    }
+
+    public static PlaceCellGrid build(List<Place> places, PlaceSpatialIndex fallback) {
+        return new PlaceCellGrid(places, fallback);
+    }
+
+    /**
+     * Recreates a grid from a layout previously taken with {@link #layout()} over the same places
+     */
+    public static PlaceCellGrid restore(List<Place> places, PlaceSpatialIndex fallback, Layout layout) {
+        return new PlaceCellGrid(layout, places, fallback);
+    }
+
+    /**
+     * Shares the classified cells with a new place list that has the same geometry in the same order
+     */
+    public PlaceCellGrid withPlaces(List<Place> samePlaces, PlaceSpatialIndex fallback) {
+        if (samePlaces.size() != places.size()) {
+            throw new IllegalArgumentException("Expected " + places.size() + " places, got " + samePlaces.size());
+        }
+        return new PlaceCellGrid(layout(), samePlaces, fallback);
+    }
+
+    public Layout layout() {
+        return new Layout(originX, originY, cellWidth, cellHeight, cols, rows, cells);
+    }
+
+    /**
+     * Raw cell table of a grid, as packed in the binary environment format. Cell arrays are shared, not copied.
+     */
+    public record Layout(double originX, double originY, double cellWidth, double cellHeight,
+                         int cols, int rows, int[][] cells) {
+    }
+
+    private void classify(int ordinal, LocationArea area, int[] sizes) {
+        double tolerance = area.getBoundaryTolerance();
+        // Degenerate or self-intersecting rings are never trusted as covering: every cell is checked exactly
+        PreparedGeometry polygon = prepareIfValid(area);
+
+        int c0 = column(area.getMinX() - tolerance), c1 = column(area.getMaxX() + tolerance);
+        int r0 = row(area.getMinY() - tolerance), r1 = row(area.getMaxY() + tolerance);
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int entry = entry(ordinal, polygon, tolerance, c, r);
+                if (entry < 0) {
+                    continue;
+                }
+
+                int index = r * cols + c;
+                int[] entries = cells[index];
+                if (sizes[index] == entries.length) {
+                    entries = Arrays.copyOf(entries, Math.max(4, entries.length * 2));
+                    cells[index] = entries;
+                }
+                entries[sizes[index]++] = entry;
+            }
+        }
+    }
+
+    // Cell entry of the place, -1 if its polygon does not reach the cell
+    private int entry(int ordinal, PreparedGeometry polygon, double tolerance, int c, int r) {
+        double x0 = originX + c * cellWidth;
+        double y0 = originY + r * cellHeight;
+        Envelope cell = new Envelope(x0, x0 + cellWidth, y0, y0 + cellHeight);
+
+        boolean full = false;
+        if (polygon != null) {
+            Envelope reach = new Envelope(cell);
+            reach.expandBy(tolerance + CELL_MARGIN);
+            if (!polygon.intersects(toGeometry(reach))) {
+                return -1;
+            }
+
+            Envelope core = new Envelope(cell);
+            core.expandBy(CELL_MARGIN);
+            full = polygon.covers(toGeometry(core));
+        }
+        return (ordinal << 1) | (full ? 1 : 0);
+    }
+
+    /**
+     * Grid over a place list with the same places in the same order, where only the polygons at the
+     * {@code reshaped} positions changed: the cells under their old and new bounding boxes are classified
+     * again, all the others are shared. Returns null when a new polygon reaches outside the grid extent,
+     * which then has to be rebuilt with {@link #build}.
+     */
+    public PlaceCellGrid withReshaped(List<Place> newPlaces, PlaceSpatialIndex newFallback, int[] reshaped) {
+        if (newPlaces.size() != places.size()) {
+            throw new IllegalArgumentException("Expected " + places.size() + " places, got " + newPlaces.size());
+        }
+        if (cols == 0) {
+            return null;
+        }
+
+        BitSet dirty = new BitSet(cells.length);
+        for (int ordinal : reshaped) {
+            LocationArea area = newPlaces.get(ordinal).getLocationArea();
+            if (area != null) {
+                double tolerance = area.getBoundaryTolerance();
+                if (area.getMinX() - tolerance < originX || area.getMaxX() + tolerance > originX + cols * cellWidth
+                        || area.getMinY() - tolerance < originY || area.getMaxY() + tolerance > originY + rows * cellHeight) {
+                    return null;
+                }
+                markCells(area, dirty);
+            }
+            LocationArea previous = places.get(ordinal).getLocationArea();
+            if (previous != null) {
+                markCells(previous, dirty);
+            }
+        }
+
+        PlaceCellGrid grid = new PlaceCellGrid(new Layout(originX, originY, cellWidth, cellHeight, cols, rows,
+                cells.clone()), newPlaces, newFallback);
+        Map<Integer, Optional<PreparedGeometry>> prepared = new HashMap<>();
+        for (int index = dirty.nextSetBit(0); index >= 0; index = dirty.nextSetBit(index + 1)) {
+            grid.cells[index] = grid.reclassifyCell(index, prepared);
+        }
+
+        log.debug("Updated PlaceCellGrid {}x{}: {} reshaped places, {} of {} cells classified again",
+                cols, rows, reshaped.length, dirty.cardinality(), cells.length);
+        return grid;
+    }
+
+    private void markCells(LocationArea area, BitSet dirty) {
+        double tolerance = area.getBoundaryTolerance();
+        int c0 = column(area.getMinX() - tolerance), c1 = column(area.getMaxX() + tolerance);
+        int r0 = row(area.getMinY() - tolerance), r1 = row(area.getMaxY() + tolerance);
+        for (int r = r0; r <= r1; r++) {
+            dirty.set(r * cols + c0, r * cols + c1 + 1);
+        }
+    }
+
+    // Entries of one cell from scratch, with the places the fallback index finds around it
+    private int[] reclassifyCell(int index, Map<Integer, Optional<PreparedGeometry>> prepared) {
+        int c = index % cols, r = index / cols;
+        double x0 = originX + c * cellWidth;
+        double y0 = originY + r * cellHeight;
+        Envelope probe = new Envelope(x0, x0 + cellWidth, y0, y0 + cellHeight);
+        // Widest boundary tolerance of any area
+        probe.expandBy(Math.sqrt(LocationArea.EPSILON) + CELL_MARGIN);
+
+        int[] entries = new int[4];
+        int size = 0;
+        for (int ordinal : fallback.indexesIntersecting(probe)) {
+            LocationArea area = places.get(ordinal).getLocationArea();
+            double tolerance = area.getBoundaryTolerance();
+            // Same cell range classify() gives the place
+            if (c < column(area.getMinX() - tolerance) || c > column(area.getMaxX() + tolerance)
+                    || r < row(area.getMinY() - tolerance) || r > row(area.getMaxY() + tolerance)) {
+                continue;
+            }
+            PreparedGeometry polygon = prepared.computeIfAbsent(ordinal, k -> Optional.ofNullable(prepareIfValid(area)))
+                    .orElse(null);
+            int entry = entry(ordinal, polygon, tolerance, c, r);
+            if (entry < 0) {
+                continue;
+            }
+            if (size == MAX_CELL_CANDIDATES) {
+                return null;
+            }
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[size++] = entry;
+        }
+        return size == 0 ? NO_CANDIDATES : Arrays.copyOf(entries, size);
+    }
+
+    private static PreparedGeometry prepareIfValid(LocationArea area) {
+        try {
+            Geometry polygon = area.toPolygon();
+            return polygon.isValid() ? PreparedGeometryFactory.prepare(polygon) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Geometry toGeometry(Envelope envelope) {
+        return GEOMETRY_FACTORY.toGeometry(envelope);
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(cols - 1, (int) Math.floor((x - originX) / cellWidth)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - originY) / cellHeight)));
+    }
+
+    /**
+     * Returns the first place (in environment order) whose area contains the point
+     */
+    public Optional<Place> findFirstContaining(double lat, double lon) {
+        if (cols == 0
+                || lon < originX || lon > originX + cols * cellWidth
+                || lat < originY || lat > originY + rows * cellHeight) {
+            // The grid extent already includes every place's tolerance band
+            return Optional.empty();
+        }
+
+        int[] entries = cells[row(lat) * cols + column(lon)];
+        if (entries == null) {
+            return fallback.findFirstContaining(lat, lon);
+        }
+
+        for (int entry : entries) {
+            Place place = places.get(entry >>> 1);
+            if ((entry & 1) == 1 || place.getLocationArea().contains(lat, lon)) {
+                return Optional.of(place);
+            }
+        }
+        return Optional.empty();
+    }
+}
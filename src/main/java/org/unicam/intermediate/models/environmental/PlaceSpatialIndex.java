@@ -0,0 +1,99 @@
+package org.unicam.intermediate.models.environmental;
+
+import lombok.extern.slf4j.Slf4j;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.unicam.intermediate.models.pojo.Place;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Immutable STR-packed R-tree over the bounding boxes of the environment places.
+ * The tree stores the position of each place in the environment list, so when
+ * places overlap the lookup still returns the first one, as the linear scan did.
+ */
+@Slf4j
+public class PlaceSpatialIndex {
+
+    private static final PlaceSpatialIndex EMPTY = new PlaceSpatialIndex(List.of());
+
+    private final List<Place> places;
+    private final STRtree tree;
+
+    public PlaceSpatialIndex(List<Place> places) {
+        this.places = List.copyOf(places);
+        this.tree = new STRtree();
+
+        for (int i = 0; i < this.places.size(); i++) {
+            LocationArea area = this.places.get(i).getLocationArea();
+            if (area != null) {
+                tree.insert(new Envelope(area.getMinX(), area.getMaxX(), area.getMinY(), area.getMaxY()), i);
+            }
+        }
+        // Pack eagerly: once built the tree is read-only and safe to share between threads
+        tree.build();
+
+        log.debug("Created PlaceSpatialIndex over {} places", this.places.size());
+    }
+
+    private PlaceSpatialIndex(List<Place> places, STRtree tree) {
+        this.places = List.copyOf(places);
+        this.tree = tree;
+    }
+
+    /**
+     * Shares the packed tree with a new place list that has the same geometry in the same order,
+     * e.g. after a reload that only changed place attributes
+     */
+    public PlaceSpatialIndex withPlaces(List<Place> samePlaces) {
+        if (samePlaces.size() != places.size()) {
+            throw new IllegalArgumentException("Expected " + places.size() + " places, got " + samePlaces.size());
+        }
+        return new PlaceSpatialIndex(samePlaces, tree);
+    }
+
+    public static PlaceSpatialIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the first place (in environment order) whose area contains the point
+     */
+    public Optional<Place> findFirstContaining(double lat, double lon) {
+        // Widen the probe by the vertex tolerance so points snapping to a corner are not missed
+        Envelope probe = new Envelope(
+                lon - LocationArea.EPSILON, lon + LocationArea.EPSILON,
+                lat - LocationArea.EPSILON, lat + LocationArea.EPSILON);
+
+        @SuppressWarnings("unchecked")
+        List<Integer> candidates = tree.query(probe);
+        if (candidates.isEmpty()) {
+            return Optional.empty();
+        }
+        if (candidates.size() > 1) {
+            candidates.sort(null);
+        }
+
+        for (int index : candidates) {
+            Place place = places.get(index);
+            if (place.getLocationArea().contains(lat, lon)) {
+                return Optional.of(place);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Positions in the environment list of the places whose bounding box intersects the envelope, ascending
+     */
+    int[] indexesIntersecting(Envelope envelope) {
+        @SuppressWarnings("unchecked")
+        List<Integer> candidates = tree.query(envelope);
+        return candidates.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    public int size() {
+        return places.size();
+    }
+}
@@ -1,10 +1,12 @@
 package org.unicam.intermediate.models.pojo;
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
 @Setter
 @Getter
+@EqualsAndHashCode
 public class Condition {
     private String attribute;
     private String operator;
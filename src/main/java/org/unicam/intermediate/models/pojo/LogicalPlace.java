@@ -1,5 +1,6 @@
 package org.unicam.intermediate.models.pojo;
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -7,6 +8,7 @@ import java.util.List;
 
 @Setter
 @Getter
+@EqualsAndHashCode
 public class LogicalPlace {
     private String id;
     private String name;
@@ -1,5 +1,6 @@
 package org.unicam.intermediate.models.pojo;
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -8,6 +9,7 @@ import java.util.Map;
 
 @Setter
 @Getter
+@EqualsAndHashCode
 public class View {
     private String id;
     private String name;
@@ -0,0 +1,25 @@
+package org.unicam.intermediate.models.record;
+
+import java.util.Set;
+
+/**
+ * What an incremental environment reload changed, by element id.
+ * Only when {@code geometryChanged} is true can participants have moved to another place.
+ */
+public record EnvironmentDiff(
+        Set<String> addedPlaces,
+        Set<String> removedPlaces,
+        Set<String> reshapedPlaces,
+        Set<String> updatedPlaces,
+        Set<String> changedEdges,
+        Set<String> changedLogicalPlaces,
+        boolean viewsChanged,
+        boolean geometryChanged
+) {
+
+    public boolean isEmpty() {
+        return addedPlaces.isEmpty() && removedPlaces.isEmpty() && reshapedPlaces.isEmpty()
+                && updatedPlaces.isEmpty() && changedEdges.isEmpty() && changedLogicalPlaces.isEmpty()
+                && !viewsChanged && !geometryChanged;
+    }
+}
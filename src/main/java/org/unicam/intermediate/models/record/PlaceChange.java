@@ -0,0 +1,5 @@
+package org.unicam.intermediate.models.record;
+
+public record PlaceChange(String participantId, String previousPlaceId, String currentPlaceId) {
+
+}
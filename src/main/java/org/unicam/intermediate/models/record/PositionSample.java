@@ -0,0 +1,10 @@
+package org.unicam.intermediate.models.record;
+
+import java.time.Instant;
+
+public record PositionSample(double lat, double lon, long timestampMillis, String placeId) {
+
+    public Instant timestamp() {
+        return Instant.ofEpochMilli(timestampMillis);
+    }
+}
@@ -0,0 +1,229 @@
+package org.unicam.intermediate.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs the location, binding and unbinding work of a business key one task at a time.
+ *
+ * Every business key has its own FIFO mailbox, drained on a shared pool (one thread per core by
+ * default): work of the same key never overlaps and runs in submission order, so two devices and the
+ * sweep cannot claim or signal the same pair concurrently, while different keys run in parallel.
+ * A mailbox exists only while it has work. Work submitted for the key the current thread is already
+ * running runs inline, so the services can route through here without caring who called them.
+ */
+@Service
+@Slf4j
+public class BusinessKeyExecutor {
+
+    // Tasks run for one key before its mailbox yields the thread to other keys
+    private static final int DRAIN_BATCH = 16;
+
+    private static final ThreadLocal<String> CURRENT_KEY = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor workers;
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder inline = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private record Job(Runnable body, CompletableFuture<?> result) {
+    }
+
+    public BusinessKeyExecutor(@Value("${location.actor.threads:0}") int threads) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        // At most one drain task per key is queued, so the pool queue is bounded by the busy keys
+        this.workers = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bk-actor-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the work on the mailbox of the business key; a null key has no ordering to keep and runs inline
+     */
+    public <T> CompletableFuture<T> submit(String businessKey, Supplier<T> work) {
+        if (businessKey == null || businessKey.equals(CURRENT_KEY.get())) {
+            inline.increment();
+            try {
+                return CompletableFuture.completedFuture(work.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Job job = new Job(() -> {
+            try {
+                result.complete(work.get());
+                completed.increment();
+            } catch (Throwable t) {
+                failed.increment();
+                result.completeExceptionally(t);
+            }
+        }, result);
+        submitted.increment();
+        // A mailbox retired by its last drain refuses new work: take a fresh one
+        while (!mailboxes.computeIfAbsent(businessKey, Mailbox::new).offer(job)) {
+            Thread.onSpinWait();
+        }
+        return result;
+    }
+
+    public CompletableFuture<Void> execute(String businessKey, Runnable work) {
+        return submit(businessKey, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the work on the actor of the business key and waits for it, rethrowing its failure.
+     * Must not be used from the actor of another key: two actors waiting on each other would never finish.
+     */
+    public <T> T call(String businessKey, Supplier<T> work) {
+        String current = CURRENT_KEY.get();
+        if (current != null && businessKey != null && !businessKey.equals(current)) {
+            throw new IllegalStateException("Actor of " + current + " cannot wait on business key " + businessKey);
+        }
+        try {
+            return submit(businessKey, work).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public void run(String businessKey, Runnable work) {
+        call(businessKey, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeKeys", mailboxes.size());
+        stats.put("pendingTasks", mailboxes.values().stream().mapToInt(Mailbox::size).sum());
+        stats.put("submitted", submitted.sum());
+        stats.put("inline", inline.sum());
+        stats.put("completed", completed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("activeWorkers", workers.getActiveCount());
+        stats.put("workerThreads", workers.getMaximumPoolSize());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Mailbox {
+        private final String businessKey;
+        private final Queue<Job> pending = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean retired;
+
+        private Mailbox(String businessKey) {
+            this.businessKey = businessKey;
+        }
+
+        synchronized boolean offer(Job job) {
+            if (retired) {
+                return false;
+            }
+            pending.add(job);
+            if (!scheduled) {
+                scheduled = schedule();
+            }
+            return true;
+        }
+
+        synchronized int size() {
+            return pending.size();
+        }
+
+        private boolean schedule() {
+            try {
+                workers.execute(this::drain);
+                return true;
+            } catch (RejectedExecutionException e) {
+                log.warn("[BK Actor] Worker pool shut down, dropping {} tasks of BK {}", pending.size(), businessKey);
+                pending.forEach(job -> job.result().completeExceptionally(e));
+                pending.clear();
+                retire();
+                return false;
+            }
+        }
+
+        private void drain() {
+            CURRENT_KEY.set(businessKey);
+            try {
+                for (int i = 0; i < DRAIN_BATCH; i++) {
+                    Job job;
+                    synchronized (this) {
+                        job = pending.poll();
+                        if (job == null) {
+                            scheduled = false;
+                            retire();
+                            return;
+                        }
+                    }
+                    job.body().run();
+                }
+            } finally {
+                CURRENT_KEY.remove();
+            }
+
+            // Still work left: go to the back of the pool queue so other keys get a turn
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    scheduled = false;
+                    retire();
+                } else {
+                    scheduled = schedule();
+                }
+            }
+        }
+
+        // Called holding the lock with nothing pending: later work goes to a new mailbox
+        private void retire() {
+            retired = true;
+            mailboxes.remove(businessKey, this);
+        }
+    }
+}
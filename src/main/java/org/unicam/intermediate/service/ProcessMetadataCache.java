@@ -0,0 +1,186 @@
+package org.unicam.intermediate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.engine.repository.ProcessDefinition;
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.ExtensionElements;
+import org.camunda.bpm.model.bpmn.instance.FlowNode;
+import org.camunda.bpm.model.bpmn.instance.Participant;
+import org.camunda.bpm.model.bpmn.instance.Process;
+import org.camunda.bpm.model.bpmn.instance.Task;
+import org.camunda.bpm.model.bpmn.instance.UserTask;
+import org.camunda.bpm.model.xml.instance.DomElement;
+import org.camunda.bpm.model.xml.instance.ModelElementInstance;
+import org.springframework.stereotype.Service;
+import org.unicam.intermediate.models.enums.ExtendedElementTaskType;
+import org.unicam.intermediate.models.enums.TaskType;
+import org.unicam.intermediate.utils.Constants;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Task metadata per process definition id: space:type, destination and candidates of each task,
+ * and the participant owning each activity.
+ *
+ * Built once per definition from the deployed XML, not from {@code getBpmnModelInstance}: the engine
+ * shares that instance and the movement listener patches the destination in it while a task runs.
+ * A definition id never changes content, so entries only go away when a new version of the same
+ * key is parsed ({@code DynamicParseListener}) and are reloaded on the next access.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ProcessMetadataCache {
+
+    private final RepositoryService repositoryService;
+
+    private final Map<String, ProcessMetadata> byDefinitionId = new ConcurrentHashMap<>();
+
+    // spaceType null = plain task, kept for the candidate users/groups
+    public record DynamicTask(String id, String spaceType, String destination,
+                              String candidateUsers, String candidateGroups) {
+    }
+
+    /**
+     * @param participantByActivity flow node id -> participant of the process containing it, for every process of the model
+     * @param participantNames      participant id -> name (the id when unnamed)
+     */
+    public record ProcessMetadata(String processDefinitionId, String processDefinitionKey, String participantId,
+                                  Map<String, DynamicTask> tasks, Map<String, List<String>> taskIdsByType,
+                                  Set<String> activityIds, Map<String, String> participantByActivity,
+                                  Map<String, String> participantNames) {
+
+        public List<String> taskIdsOfType(TaskType taskType) {
+            return taskIdsByType.getOrDefault(taskType.toString(), List.of());
+        }
+
+        public boolean hasTasksOfType(TaskType taskType) {
+            return !taskIdsOfType(taskType).isEmpty();
+        }
+
+        public DynamicTask task(String taskId) {
+            return tasks.get(taskId);
+        }
+
+        public boolean hasActivity(String activityId) {
+            return activityIds.contains(activityId);
+        }
+
+        public String participantOfActivity(String activityId) {
+            return participantByActivity.get(activityId);
+        }
+    }
+
+    public ProcessMetadata get(ProcessDefinition definition) {
+        return byDefinitionId.computeIfAbsent(definition.getId(), id -> load(id, definition.getKey()));
+    }
+
+    public ProcessMetadata get(String processDefinitionId) {
+        return byDefinitionId.computeIfAbsent(processDefinitionId, id -> load(id, keyOf(id)));
+    }
+
+    /**
+     * Drops the cached versions of a process key, e.g. when it is deployed again
+     */
+    public void invalidate(String processDefinitionKey) {
+        if (byDefinitionId.values().removeIf(metadata -> metadata.processDefinitionKey().equals(processDefinitionKey))) {
+            log.debug("[ProcessMetadataCache] Invalidated metadata of process {}", processDefinitionKey);
+        }
+    }
+
+    public void clear() {
+        byDefinitionId.clear();
+    }
+
+    private ProcessMetadata load(String processDefinitionId, String processDefinitionKey) {
+        BpmnModelInstance model;
+        try (InputStream xml = repositoryService.getProcessModel(processDefinitionId)) {
+            model = Bpmn.readModelFromStream(xml);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot read BPMN of process definition " + processDefinitionId, e);
+        }
+
+        Map<String, DynamicTask> tasks = new LinkedHashMap<>();
+        Map<String, List<String>> taskIdsByType = new HashMap<>();
+        for (Task task : model.getModelElementsByType(Task.class)) {
+            String spaceType = spaceValue(task, ExtendedElementTaskType.TYPE);
+            UserTask userTask = task instanceof UserTask ut ? ut : null;
+            tasks.put(task.getId(), new DynamicTask(
+                    task.getId(),
+                    spaceType,
+                    spaceValue(task, ExtendedElementTaskType.DESTINATION),
+                    userTask != null ? userTask.getCamundaCandidateUsers() : null,
+                    userTask != null ? userTask.getCamundaCandidateGroups() : null));
+            if (spaceType != null) {
+                taskIdsByType.computeIfAbsent(spaceType, type -> new ArrayList<>()).add(task.getId());
+            }
+        }
+        taskIdsByType.replaceAll((type, ids) -> List.copyOf(ids));
+
+        Map<String, String> participantByProcess = new HashMap<>();
+        Map<String, String> participantNames = new HashMap<>();
+        for (Participant participant : model.getModelElementsByType(Participant.class)) {
+            participantNames.put(participant.getId(),
+                    participant.getName() != null ? participant.getName() : participant.getId());
+            if (participant.getProcess() != null) {
+                participantByProcess.putIfAbsent(participant.getProcess().getId(), participant.getId());
+            }
+        }
+
+        Set<String> activityIds = new HashSet<>();
+        Map<String, String> participantByActivity = new HashMap<>();
+        for (FlowNode node : model.getModelElementsByType(FlowNode.class)) {
+            activityIds.add(node.getId());
+            Process process = processOf(node);
+            String participantId = process != null ? participantByProcess.get(process.getId()) : null;
+            if (participantId != null) {
+                participantByActivity.put(node.getId(), participantId);
+            }
+        }
+
+        ProcessMetadata metadata = new ProcessMetadata(processDefinitionId, processDefinitionKey,
+                participantByProcess.get(processDefinitionKey), Map.copyOf(tasks), Map.copyOf(taskIdsByType),
+                Set.copyOf(activityIds), Map.copyOf(participantByActivity), Map.copyOf(participantNames));
+        log.debug("[ProcessMetadataCache] Loaded {} tasks of {}", tasks.size(), processDefinitionId);
+        return metadata;
+    }
+
+    private String keyOf(String processDefinitionId) {
+        ProcessDefinition definition = repositoryService.getProcessDefinition(processDefinitionId);
+        return definition.getKey();
+    }
+
+    private static Process processOf(FlowNode node) {
+        ModelElementInstance container = node.getParentElement();
+        while (container != null && !(container instanceof Process)) {
+            container = container.getParentElement();
+        }
+        return (Process) container;
+    }
+
+    private static String spaceValue(Task task, ExtendedElementTaskType element) {
+        ExtensionElements ext = task.getExtensionElements();
+        if (ext == null) {
+            return null;
+        }
+        String localName = element.toString();
+        for (DomElement dom : ext.getDomElement().getChildElements()) {
+            if (localName.equalsIgnoreCase(dom.getLocalName())
+                    && Constants.SPACE_NS.getNamespaceUri().equals(dom.getNamespaceURI())) {
+                return dom.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,173 @@
+package org.unicam.intermediate.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.OptimisticLockingException;
+import org.camunda.bpm.engine.RuntimeService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Signals waiting executions off the caller's thread.
+ *
+ * The GPS path only enqueues: one pending signal per execution id (a second request while the first
+ * is queued or running is dropped), run on a fixed pool and retried with exponential backoff when the
+ * engine reports an optimistic locking conflict, e.g. the two sides of a binding signaled together.
+ */
+@Service
+@Slf4j
+public class SignalDispatcher {
+
+    private final RuntimeService runtimeService;
+    private final ScheduledThreadPoolExecutor executor;
+    private final int maxAttempts;
+    private final long backoffMillis;
+
+    // executionId -> signal queued or running
+    private final Map<String, PendingSignal> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    private record PendingSignal(String executionId, String description, Runnable onFailure, long enqueuedAt) {
+    }
+
+    public SignalDispatcher(RuntimeService runtimeService,
+                            @Value("${signal.dispatcher.threads:4}") int threads,
+                            @Value("${signal.dispatcher.max-attempts:5}") int maxAttempts,
+                            @Value("${signal.dispatcher.backoff-ms:50}") long backoffMillis) {
+        this.runtimeService = runtimeService;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMillis = Math.max(1, backoffMillis);
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "signal-dispatcher-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Queues a signal for the execution; false if one is already pending for it
+     */
+    public boolean submit(String executionId, String description) {
+        return submit(executionId, description, null);
+    }
+
+    /**
+     * @param onFailure run on the dispatcher thread if the signal finally fails, or on the caller's
+     *                  thread when the dispatcher is shut down and cannot take it (may be null)
+     * @return false, without queuing it, if a signal is already pending for the execution or the
+     *         dispatcher is shut down
+     */
+    public boolean submit(String executionId, String description, Runnable onFailure) {
+        PendingSignal signal = new PendingSignal(executionId, description, onFailure, System.nanoTime());
+        if (pending.putIfAbsent(executionId, signal) != null) {
+            deduplicated.increment();
+            log.debug("[SignalDispatcher] Signal for execution {} already pending, dropping {}", executionId, description);
+            return false;
+        }
+        submitted.increment();
+        try {
+            executor.execute(() -> attempt(signal, 1));
+        } catch (RejectedExecutionException e) {
+            // Shutting down: release the dedup entry and let the caller give back what it claimed
+            fail(signal, e);
+            return false;
+        }
+        return true;
+    }
+
+    private void attempt(PendingSignal signal, int attempt) {
+        try {
+            runtimeService.signal(signal.executionId());
+            succeeded.increment();
+            log.info("[SignalDispatcher] Signaled execution {} ({})", signal.executionId(), signal.description());
+            complete(signal);
+        } catch (OptimisticLockingException e) {
+            if (attempt < maxAttempts) {
+                long delay = (backoffMillis << (attempt - 1)) + ThreadLocalRandom.current().nextLong(backoffMillis);
+                retried.increment();
+                log.debug("[SignalDispatcher] Conflict signaling execution {}, retry {} in {} ms",
+                        signal.executionId(), attempt, delay);
+                try {
+                    executor.schedule(() -> attempt(signal, attempt + 1), delay, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException rejected) {
+                    fail(signal, rejected);
+                    return;
+                }
+            }
+            fail(signal, e);
+        } catch (RuntimeException e) {
+            fail(signal, e);
+        }
+    }
+
+    private void fail(PendingSignal signal, RuntimeException e) {
+        failed.increment();
+        log.error("[SignalDispatcher] Failed to signal execution {} ({}): {}",
+                signal.executionId(), signal.description(), e.getMessage());
+        complete(signal);
+        if (signal.onFailure() != null) {
+            try {
+                signal.onFailure().run();
+            } catch (RuntimeException callbackFailure) {
+                log.warn("[SignalDispatcher] Failure callback of execution {} failed: {}",
+                        signal.executionId(), callbackFailure.getMessage());
+            }
+        }
+    }
+
+    private void complete(PendingSignal signal) {
+        pending.remove(signal.executionId(), signal);
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - signal.enqueuedAt());
+        totalLatencyMillis.add(latency);
+        maxLatencyMillis.accumulateAndGet(latency, Math::max);
+    }
+
+    public Map<String, Object> getStats() {
+        long done = succeeded.sum() + failed.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", pending.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("retried", retried.sum());
+        stats.put("avgLatencyMs", done > 0 ? totalLatencyMillis.sum() / done : 0);
+        stats.put("maxLatencyMs", maxLatencyMillis.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
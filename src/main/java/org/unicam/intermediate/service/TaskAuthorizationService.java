@@ -1,25 +1,41 @@
 package org.unicam.intermediate.service;
 
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.camunda.bpm.engine.IdentityService;
 import org.camunda.bpm.engine.TaskService;
 import org.camunda.bpm.engine.identity.Group;
 import org.camunda.bpm.engine.task.IdentityLink;
 import org.camunda.bpm.engine.task.Task;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class TaskAuthorizationService {
     
     private final TaskService taskService;
     private final IdentityService identityService;
+
+    @Value("${task.authorization.group-cache-ttl-seconds:60}")
+    private long groupCacheTtlSeconds;
+
+    // userId -> group ids, reloaded after the TTL or when invalidated
+    private final Map<String, CachedGroups> userGroupsCache = new ConcurrentHashMap<>();
+
+    private record CachedGroups(Set<String> groupIds, long expiresAt) {
+    }
     
     /**
      * Check if a user can access a specific task
@@ -39,13 +55,7 @@ public class TaskAuthorizationService {
         }
 
         // Check if user is in candidate group
-        List<Group> userGroups = identityService.createGroupQuery()
-                .groupMember(userId)
-                .list();
-
-        Set<String> userGroupIds = userGroups.stream()
-                .map(Group::getId)
-                .collect(Collectors.toSet());
+        Set<String> userGroupIds = getUserGroupIds(userId);
 
         for (IdentityLink link : links) {
             if ("candidate".equals(link.getType()) && userGroupIds.contains(link.getGroupId())) {
@@ -55,6 +65,76 @@ public class TaskAuthorizationService {
 
         return false;
     }
+
+    /**
+     * The tasks of the list the user can access, with the same rules as {@link #canUserAccessTask}
+     * but a single task query for the whole list instead of one identity link query per task
+     */
+    public List<Task> filterAccessibleTasks(String userId, Collection<Task> tasks) {
+        if (tasks.isEmpty()) {
+            return List.of();
+        }
+
+        Set<String> taskIds = new HashSet<>();
+        for (Task task : tasks) {
+            // Assigned tasks need no query
+            if (!userId.equals(task.getAssignee())) {
+                taskIds.add(task.getId());
+            }
+        }
+
+        Set<String> candidateTaskIds = new HashSet<>();
+        if (!taskIds.isEmpty()) {
+            Set<String> userGroupIds = getUserGroupIds(userId);
+            var query = taskService.createTaskQuery()
+                    .taskIdIn(taskIds.toArray(String[]::new))
+                    .or()
+                    .taskCandidateUser(userId).includeAssignedTasks();
+            if (!userGroupIds.isEmpty()) {
+                query.taskCandidateGroupIn(new ArrayList<>(userGroupIds)).includeAssignedTasks();
+            }
+            query.endOr()
+                    .list()
+                    .forEach(task -> candidateTaskIds.add(task.getId()));
+        }
+
+        return tasks.stream()
+                .filter(task -> userId.equals(task.getAssignee()) || candidateTaskIds.contains(task.getId()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Group ids of the user, cached for {@code task.authorization.group-cache-ttl-seconds}
+     */
+    public Set<String> getUserGroupIds(String userId) {
+        long now = System.currentTimeMillis();
+        CachedGroups cached = userGroupsCache.get(userId);
+        if (cached != null && cached.expiresAt() > now) {
+            return cached.groupIds();
+        }
+
+        // Not Set.copyOf: contains(null) must work for identity links without a group
+        Set<String> groupIds = Collections.unmodifiableSet(identityService.createGroupQuery()
+                .groupMember(userId)
+                .list()
+                .stream()
+                .map(Group::getId)
+                .collect(Collectors.toSet()));
+        userGroupsCache.put(userId, new CachedGroups(groupIds, now + groupCacheTtlSeconds * 1000));
+        return groupIds;
+    }
+
+    /**
+     * To call after changing the memberships of a user
+     */
+    public void invalidateUserGroups(String userId) {
+        userGroupsCache.remove(userId);
+    }
+
+    public void invalidateAllUserGroups() {
+        userGroupsCache.clear();
+        log.debug("[TaskAuthorization] User groups cache cleared");
+    }
     
     /**
      * Check if a user can access a task by ID
@@ -70,4 +150,4 @@ public class TaskAuthorizationService {
         
         return canUserAccessTask(userId, task);
     }
-}
\ No newline at end of file
+}
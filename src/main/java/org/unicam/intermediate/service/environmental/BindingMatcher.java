@@ -0,0 +1,189 @@
+package org.unicam.intermediate.service.environmental;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.RuntimeService;
+import org.springframework.stereotype.Service;
+import org.unicam.intermediate.models.WaitingBinding;
+import org.unicam.intermediate.models.enums.TaskType;
+import org.unicam.intermediate.models.pojo.Place;
+import org.unicam.intermediate.service.BusinessKeyExecutor;
+import org.unicam.intermediate.service.SignalDispatcher;
+import org.unicam.intermediate.service.participant.ParticipantPositionService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Pairs waiting bindings/unbindings when a participant's place changes.
+ *
+ * Two waiting entries match when each targets the other's participant and both participants are
+ * in the same place. Only the entries of the participant that moved are looked at, and the place
+ * comparison uses the place already resolved by {@link ParticipantPositionService}, so matching
+ * costs two map lookups instead of a scan of every waiting pair with two polygon lookups each.
+ * Matching runs on the actor of the business key ({@link BusinessKeyExecutor}), so a pair is never
+ * claimed by two threads at once.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class BindingMatcher {
+
+    private final BindingService bindingService;
+    private final ParticipantPositionService positionService;
+    private final EnvironmentDataService environmentDataService;
+    private final RuntimeService runtimeService;
+    private final SignalDispatcher signalDispatcher;
+    private final BusinessKeyExecutor businessKeyExecutor;
+
+    public record Match(TaskType taskType, String businessKey, String participantId,
+                        String otherParticipantId, Place place) {
+    }
+
+    /**
+     * Re-evaluates the bindings and unbindings of a participant that just changed place
+     */
+    public List<Match> onPlaceChanged(String businessKey, String participantId) {
+        return businessKeyExecutor.call(businessKey, () -> {
+            List<Match> matches = new ArrayList<>(2);
+            tryMatch(TaskType.BINDING, businessKey, participantId, matches);
+            tryMatch(TaskType.UNBINDING, businessKey, participantId, matches);
+            return matches;
+        });
+    }
+
+    /**
+     * Same as {@link #onPlaceChanged(String, String)} in every business key the participant is waiting in,
+     * for callers that do not know it (e.g. positions reconciled after an environment reload)
+     */
+    public List<Match> onPlaceChanged(String participantId) {
+        return matchPerBusinessKey(bindingService.getWaitingBindingsOf(participantId),
+                bindingService.getWaitingUnbindingsOf(participantId));
+    }
+
+    /**
+     * Safety net: tries every waiting entry once, in case a place change was missed
+     */
+    public List<Match> sweep() {
+        return matchPerBusinessKey(bindingService.getAllWaitingBindings(), bindingService.getAllWaitingUnbindings());
+    }
+
+    // Each business key is matched on its own actor, the keys in parallel
+    private List<Match> matchPerBusinessKey(List<WaitingBinding> bindings, List<WaitingBinding> unbindings) {
+        Map<String, List<WaitingEntry>> byBusinessKey = new LinkedHashMap<>();
+        bindings.forEach(wb -> byBusinessKey.computeIfAbsent(wb.getBusinessKey(), bk -> new ArrayList<>())
+                .add(new WaitingEntry(TaskType.BINDING, wb.getCurrentParticipantId())));
+        unbindings.forEach(wu -> byBusinessKey.computeIfAbsent(wu.getBusinessKey(), bk -> new ArrayList<>())
+                .add(new WaitingEntry(TaskType.UNBINDING, wu.getCurrentParticipantId())));
+
+        List<CompletableFuture<List<Match>>> results = new ArrayList<>(byBusinessKey.size());
+        byBusinessKey.forEach((businessKey, entries) -> results.add(businessKeyExecutor.submit(businessKey, () -> {
+            List<Match> matches = new ArrayList<>();
+            entries.forEach(entry -> tryMatch(entry.taskType(), businessKey, entry.participantId(), matches));
+            return matches;
+        })));
+
+        List<Match> matches = new ArrayList<>();
+        for (CompletableFuture<List<Match>> result : results) {
+            matches.addAll(result.join());
+        }
+        return matches;
+    }
+
+    private record WaitingEntry(TaskType taskType, String participantId) {
+    }
+
+    private void tryMatch(TaskType taskType, String businessKey, String participantId, List<Match> matches) {
+        // A null business key is a valid bucket of its own (processes started without one)
+        if (participantId == null) {
+            return;
+        }
+        boolean binding = taskType == TaskType.BINDING;
+
+        // Waiting entries are keyed by target: the other side's entry is the one targeting us
+        WaitingBinding other = binding
+                ? bindingService.getWaitingBinding(businessKey, participantId)
+                : bindingService.getWaitingUnbinding(businessKey, participantId);
+        if (other == null) {
+            return;
+        }
+        String otherParticipantId = other.getCurrentParticipantId();
+        WaitingBinding mine = binding
+                ? bindingService.getWaitingBinding(businessKey, otherParticipantId)
+                : bindingService.getWaitingUnbinding(businessKey, otherParticipantId);
+        if (mine == null || !participantId.equals(mine.getCurrentParticipantId())) {
+            log.debug("[BindingMatcher] {} of {} has no counterpart yet in BK {}", taskType, otherParticipantId, businessKey);
+            return;
+        }
+
+        Place place = sharedPlace(participantId, otherParticipantId);
+        if (place == null) {
+            return;
+        }
+        if (!isActive(taskType, mine) || !isActive(taskType, other)) {
+            return;
+        }
+
+        boolean claimed = binding
+                ? bindingService.claimBindingPair(mine, other)
+                : bindingService.claimUnbindingPair(mine, other);
+        if (!claimed) {
+            return;
+        }
+
+        log.info("[BindingMatcher] {} READY - Participants {} and {} in same place: {} ({})",
+                taskType, participantId, otherParticipantId, place.getId(), place.getName());
+        signal(taskType, mine);
+        signal(taskType, other);
+        matches.add(new Match(taskType, businessKey, participantId, otherParticipantId, place));
+    }
+
+    private Place sharedPlace(String participantId, String otherParticipantId) {
+        String placeId = positionService.getPlaceId(participantId);
+        if (placeId == null || !placeId.equals(positionService.getPlaceId(otherParticipantId))) {
+            return null;
+        }
+        return environmentDataService.findPlaceById(placeId).orElse(null);
+    }
+
+    // A waiting entry whose execution is gone (e.g. process cancelled) is dropped, the other keeps waiting
+    private boolean isActive(TaskType taskType, WaitingBinding waiting) {
+        boolean active = runtimeService.createExecutionQuery()
+                .executionId(waiting.getExecutionId())
+                .count() > 0;
+        if (!active) {
+            log.warn("[BindingMatcher] Execution {} of participant {} is no longer active, dropping its {}",
+                    waiting.getExecutionId(), waiting.getCurrentParticipantId(), taskType);
+            if (taskType == TaskType.BINDING) {
+                bindingService.removeWaitingBinding(waiting.getBusinessKey(), waiting.getTargetParticipantId());
+            } else {
+                bindingService.removeWaitingUnbinding(waiting.getBusinessKey(), waiting.getTargetParticipantId());
+            }
+        }
+        return active;
+    }
+
+    private void signal(TaskType taskType, WaitingBinding waiting) {
+        log.info("[BindingMatcher] Signaling {} execution {} for participant {}",
+                taskType, waiting.getExecutionId(), waiting.getCurrentParticipantId());
+        // The pair was already claimed: if the signal fails for good and the task still waits, put it back
+        signalDispatcher.submit(waiting.getExecutionId(), taskType + " of " + waiting.getCurrentParticipantId(),
+                () -> businessKeyExecutor.execute(waiting.getBusinessKey(), () -> restore(taskType, waiting)));
+    }
+
+    private void restore(TaskType taskType, WaitingBinding waiting) {
+        if (runtimeService.createExecutionQuery().executionId(waiting.getExecutionId()).count() == 0) {
+            return;
+        }
+        log.warn("[BindingMatcher] Signal of {} execution {} failed, {} waits again",
+                taskType, waiting.getExecutionId(), waiting.getCurrentParticipantId());
+        if (taskType == TaskType.BINDING) {
+            bindingService.addWaitingBinding(waiting);
+        } else {
+            bindingService.addWaitingUnbinding(waiting);
+        }
+    }
+}
@@ -4,92 +4,32 @@ package org.unicam.intermediate.service.environmental;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.camunda.bpm.engine.RuntimeService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.unicam.intermediate.models.WaitingBinding;
-import org.unicam.intermediate.models.pojo.Place;
 
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
+/**
+ * Optional safety sweep over the waiting bindings. Pairs are normally matched by {@link BindingMatcher}
+ * as soon as a participant changes place; enable with {@code binding.sweep.enabled=true} to also retry
+ * every waiting entry periodically.
+ */
 @Service
 @Slf4j
 @AllArgsConstructor
+@EnableScheduling
+@ConditionalOnProperty(name = "binding.sweep.enabled", havingValue = "true")
 public class BindingProximityMonitor {
-    
-    private final BindingService bindingService;
-    private final ProximityService proximityService;
-    private final RuntimeService runtimeService;
-    
-    /**
-     * Check every 5 seconds if waiting participants are now in the same place
-     */
-    @Scheduled(fixedDelay = 5000)
+
+    private final BindingMatcher bindingMatcher;
+
+    @Scheduled(fixedDelayString = "${binding.sweep.interval-ms:5000}")
     public void checkWaitingBindings() {
-        // Check bindings
-        processWaitingList(bindingService.getAllWaitingBindings(), true);
-        
-        // Check unbindings
-        processWaitingList(bindingService.getAllWaitingUnbindings(), false);
-    }
-    
-    private void processWaitingList(List<WaitingBinding> waitingList, boolean isBinding) {
-        String operation = isBinding ? "BINDING" : "UNBINDING";
-        
-        // Group by business key
-        Map<String, List<WaitingBinding>> byBusinessKey = waitingList.stream()
-                .collect(Collectors.groupingBy(WaitingBinding::getBusinessKey));
-        
-        for (List<WaitingBinding> bindings : byBusinessKey.values()) {
-            if (bindings.size() >= 2) {
-                // Check pairs
-                for (int i = 0; i < bindings.size() - 1; i++) {
-                    for (int j = i + 1; j < bindings.size(); j++) {
-                        checkAndSignalPair(bindings.get(i), bindings.get(j), isBinding, operation);
-                    }
-                }
-            }
-        }
-    }
-    
-    private void checkAndSignalPair(WaitingBinding binding1, WaitingBinding binding2, 
-                                   boolean isBinding, String operation) {
-        // Check if they're waiting for each other
-        if (!binding1.getTargetParticipantId().equals(binding2.getCurrentParticipantId()) ||
-            !binding2.getTargetParticipantId().equals(binding1.getCurrentParticipantId())) {
-            return;
-        }
-        
-        // Check if in same place
-        Place place = proximityService.getBindingPlace(
-                binding1.getCurrentParticipantId(),
-                binding2.getCurrentParticipantId());
-        
-        if (place != null) {
-            log.info("[Monitor] {} - Participants now in same place: {} ({}). Signaling processes!", 
-                    operation, place.getId(), place.getName());
-            
-            try {
-                // Remove from waiting
-                if (isBinding) {
-                    bindingService.removeWaitingBinding(binding1.getBusinessKey(), binding1.getTargetParticipantId());
-                    bindingService.removeWaitingBinding(binding2.getBusinessKey(), binding2.getTargetParticipantId());
-                } else {
-                    bindingService.removeWaitingUnbinding(binding1.getBusinessKey(), binding1.getTargetParticipantId());
-                    bindingService.removeWaitingUnbinding(binding2.getBusinessKey(), binding2.getTargetParticipantId());
-                }
-                
-                // Signal both
-                runtimeService.signal(binding1.getExecutionId());
-                runtimeService.signal(binding2.getExecutionId());
-                
-                log.info("[Monitor] {} completed successfully in place: {}", operation, place.getName());
-                
-            } catch (Exception e) {
-                log.error("[Monitor] Failed to signal {} executions", operation, e);
-            }
+        List<BindingMatcher.Match> matches = bindingMatcher.sweep();
+        if (!matches.isEmpty()) {
+            log.info("[Monitor] Sweep matched {} pairs missed by the place-change path: {}", matches.size(), matches);
         }
     }
-}
\ No newline at end of file
+}
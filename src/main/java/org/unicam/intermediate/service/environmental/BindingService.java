@@ -4,82 +4,97 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.unicam.intermediate.models.WaitingBinding;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class BindingService {
-    
-    // Chiave: businessKey:participantId -> WaitingBinding
-    private final Map<String, WaitingBinding> waitingBindings = new ConcurrentHashMap<>();
-    private final Map<String, WaitingBinding> waitingUnbindings = new ConcurrentHashMap<>();
-
-    public synchronized Optional<WaitingBinding> findWaitingBinding(String businessKey, String currentParticipantId) {
-        String checkingKey = businessKey + ":" + currentParticipantId;
-        WaitingBinding waiting = waitingBindings.get(checkingKey);
-        
-        if (waiting != null) {
-            log.info("[BindingService] Found waiting binding for key: {}", checkingKey);
-            return Optional.of(waiting);
-        }
-        
-        log.debug("[BindingService] No waiting binding found for key: {}", checkingKey);
-        return Optional.empty();
+
+    private final WaitingStore waitingBindings = new WaitingStore("binding");
+    private final WaitingStore waitingUnbindings = new WaitingStore("unbinding");
+
+    public Optional<WaitingBinding> findWaitingBinding(String businessKey, String currentParticipantId) {
+        return waitingBindings.find(businessKey, currentParticipantId);
     }
 
-    public synchronized void addWaitingBinding(WaitingBinding binding) {
-        String waitingKey = binding.getWaitingKey();
-        waitingBindings.put(waitingKey, binding);
-        log.info("[BindingService] Added waiting binding: {} waiting for {}", 
-                binding.getCurrentParticipantId(), binding.getTargetParticipantId());
+    public void addWaitingBinding(WaitingBinding binding) {
+        waitingBindings.add(binding);
     }
 
-    public synchronized void removeWaitingBinding(String businessKey, String participantId) {
-        String key = businessKey + ":" + participantId;
-        WaitingBinding removed = waitingBindings.remove(key);
-        if (removed != null) {
-            log.info("[BindingService] Removed waiting binding for key: {}", key);
-        }
+    public void removeWaitingBinding(String businessKey, String participantId) {
+        waitingBindings.remove(businessKey, participantId);
     }
 
-    public synchronized Optional<WaitingBinding> findWaitingUnbinding(String businessKey, String currentParticipantId) {
-        String checkingKey = businessKey + ":" + currentParticipantId;
-        WaitingBinding waiting = waitingUnbindings.get(checkingKey);
-        
-        if (waiting != null) {
-            log.info("[BindingService] Found waiting unbinding for key: {}", checkingKey);
-            return Optional.of(waiting);
-        }
-        
-        log.debug("[BindingService] No waiting unbinding found for key: {}", checkingKey);
-        return Optional.empty();
+    public Optional<WaitingBinding> findWaitingUnbinding(String businessKey, String currentParticipantId) {
+        return waitingUnbindings.find(businessKey, currentParticipantId);
     }
 
-    public synchronized void addWaitingUnbinding(WaitingBinding unbinding) {
-        String waitingKey = unbinding.getWaitingKey();
-        waitingUnbindings.put(waitingKey, unbinding);
-        log.info("[BindingService] Added waiting unbinding: {} waiting for {}", 
-                unbinding.getCurrentParticipantId(), unbinding.getTargetParticipantId());
+    public void addWaitingUnbinding(WaitingBinding unbinding) {
+        waitingUnbindings.add(unbinding);
     }
 
-    public synchronized void removeWaitingUnbinding(String businessKey, String participantId) {
-        String key = businessKey + ":" + participantId;
-        WaitingBinding removed = waitingUnbindings.remove(key);
-        if (removed != null) {
-            log.info("[BindingService] Removed waiting unbinding for key: {}", key);
-        }
+    public void removeWaitingUnbinding(String businessKey, String participantId) {
+        waitingUnbindings.remove(businessKey, participantId);
+    }
+
+    /**
+     * The binding waiting for {@code targetParticipantId}, without logging; null if none
+     */
+    public WaitingBinding getWaitingBinding(String businessKey, String targetParticipantId) {
+        return waitingBindings.get(businessKey, targetParticipantId);
+    }
+
+    public WaitingBinding getWaitingUnbinding(String businessKey, String targetParticipantId) {
+        return waitingUnbindings.get(businessKey, targetParticipantId);
+    }
+
+    /**
+     * Bindings of the business key started by or waiting for the participant
+     */
+    public List<WaitingBinding> waitingBindingsFor(String businessKey, String participantId) {
+        return waitingBindings.involving(businessKey, participantId);
+    }
+
+    public List<WaitingBinding> waitingUnbindingsFor(String businessKey, String participantId) {
+        return waitingUnbindings.involving(businessKey, participantId);
+    }
+
+    /**
+     * Removes both bindings of a matched pair, only if both are still waiting. Returns false when
+     * another thread already took either of them, so a pair is signaled exactly once.
+     */
+    public boolean claimBindingPair(WaitingBinding first, WaitingBinding second) {
+        return waitingBindings.claimPair(first, second);
+    }
+
+    public boolean claimUnbindingPair(WaitingBinding first, WaitingBinding second) {
+        return waitingUnbindings.claimPair(first, second);
+    }
+
+    /**
+     * Bindings and unbindings started by the participant, in any business key
+     */
+    public List<WaitingBinding> getWaitingBindingsOf(String participantId) {
+        return waitingBindings.startedBy(participantId);
+    }
+
+    public List<WaitingBinding> getWaitingUnbindingsOf(String participantId) {
+        return waitingUnbindings.startedBy(participantId);
     }
 
     public List<WaitingBinding> getAllWaitingBindings() {
-        return waitingBindings.values().stream().collect(Collectors.toList());
+        return waitingBindings.all();
     }
 
     public List<WaitingBinding> getAllWaitingUnbindings() {
-        return waitingUnbindings.values().stream().collect(Collectors.toList());
+        return waitingUnbindings.all();
     }
 
     public void clearAll() {
@@ -87,4 +102,191 @@ public class BindingService {
         waitingUnbindings.clear();
         log.info("[BindingService] Cleared all waiting bindings and unbindings");
     }
-}
\ No newline at end of file
+
+    /**
+     * Waiting entries indexed by business key, then by target participant (the waiting key), plus
+     * an index participant -> business keys it is waiting in.
+     * Each business key holds a small immutable map replaced on write inside
+     * {@link ConcurrentHashMap#compute}, so writers only contend on the same business key and
+     * readers never lock nor copy. Entries without a business key share one bucket, so they still
+     * pair with each other as they always did.
+     */
+    private static final class WaitingStore {
+        private static final String NO_BUSINESS_KEY = "\u0000no-business-key";
+
+        private final String label;
+        private final Map<String, Map<String, WaitingBinding>> byBusinessKey = new ConcurrentHashMap<>();
+        // Current participant -> business keys with an entry it started; updated under the business key lock
+        private final Map<String, Set<String>> businessKeysByParticipant = new ConcurrentHashMap<>();
+
+        private WaitingStore(String label) {
+            this.label = label;
+        }
+
+        private static String bucketKey(String businessKey) {
+            return businessKey != null ? businessKey : NO_BUSINESS_KEY;
+        }
+
+        WaitingBinding get(String businessKey, String targetParticipantId) {
+            if (targetParticipantId == null) {
+                return null;
+            }
+            Map<String, WaitingBinding> bucket = byBusinessKey.get(bucketKey(businessKey));
+            return bucket != null ? bucket.get(targetParticipantId) : null;
+        }
+
+        Optional<WaitingBinding> find(String businessKey, String currentParticipantId) {
+            WaitingBinding waiting = get(businessKey, currentParticipantId);
+            if (waiting != null) {
+                log.info("[BindingService] Found waiting {} for key: {}:{}", label, businessKey, currentParticipantId);
+                return Optional.of(waiting);
+            }
+            log.debug("[BindingService] No waiting {} found for key: {}:{}", label, businessKey, currentParticipantId);
+            return Optional.empty();
+        }
+
+        void add(WaitingBinding waiting) {
+            if (waiting.getTargetParticipantId() == null) {
+                log.warn("[BindingService] Ignoring waiting {} without target: {}", label, waiting);
+                return;
+            }
+            if (waiting.getBusinessKey() == null) {
+                log.warn("[BindingService] Waiting {} of {} has no business key, it can only pair with others without one",
+                        label, waiting.getCurrentParticipantId());
+            }
+            byBusinessKey.compute(bucketKey(waiting.getBusinessKey()), (businessKey, bucket) -> {
+                Map<String, WaitingBinding> updated = bucket != null ? new HashMap<>(bucket) : new HashMap<>();
+                WaitingBinding replaced = updated.put(waiting.getTargetParticipantId(), waiting);
+                if (replaced != null) {
+                    unindex(updated, replaced);
+                }
+                index(waiting);
+                return Map.copyOf(updated);
+            });
+            log.info("[BindingService] Added waiting {}: {} waiting for {}",
+                    label, waiting.getCurrentParticipantId(), waiting.getTargetParticipantId());
+        }
+
+        void remove(String businessKey, String targetParticipantId) {
+            if (targetParticipantId == null) {
+                return;
+            }
+            WaitingBinding[] removed = new WaitingBinding[1];
+            byBusinessKey.computeIfPresent(bucketKey(businessKey), (key, bucket) -> {
+                if (!bucket.containsKey(targetParticipantId)) {
+                    return bucket;
+                }
+                Map<String, WaitingBinding> updated = new HashMap<>(bucket);
+                removed[0] = updated.remove(targetParticipantId);
+                unindex(updated, removed[0]);
+                return updated.isEmpty() ? null : Map.copyOf(updated);
+            });
+            if (removed[0] != null) {
+                log.info("[BindingService] Removed waiting {} for key: {}:{}", label, businessKey, targetParticipantId);
+            }
+        }
+
+        boolean claimPair(WaitingBinding first, WaitingBinding second) {
+            if (!Objects.equals(first.getBusinessKey(), second.getBusinessKey())) {
+                return false;
+            }
+            boolean[] claimed = new boolean[1];
+            byBusinessKey.computeIfPresent(bucketKey(first.getBusinessKey()), (businessKey, bucket) -> {
+                if (bucket.get(first.getTargetParticipantId()) != first
+                        || bucket.get(second.getTargetParticipantId()) != second) {
+                    return bucket;
+                }
+                Map<String, WaitingBinding> updated = new HashMap<>(bucket);
+                updated.remove(first.getTargetParticipantId());
+                updated.remove(second.getTargetParticipantId());
+                unindex(updated, first);
+                unindex(updated, second);
+                claimed[0] = true;
+                return updated.isEmpty() ? null : Map.copyOf(updated);
+            });
+            if (claimed[0]) {
+                log.info("[BindingService] Claimed {} pair {} <-> {} in BK {}", label,
+                        first.getCurrentParticipantId(), second.getCurrentParticipantId(), first.getBusinessKey());
+            }
+            return claimed[0];
+        }
+
+        List<WaitingBinding> involving(String businessKey, String participantId) {
+            Map<String, WaitingBinding> bucket = byBusinessKey.get(bucketKey(businessKey));
+            if (bucket == null || participantId == null) {
+                return List.of();
+            }
+            List<WaitingBinding> result = null;
+            for (WaitingBinding waiting : bucket.values()) {
+                if (participantId.equals(waiting.getCurrentParticipantId())
+                        || participantId.equals(waiting.getTargetParticipantId())) {
+                    if (result == null) {
+                        result = new ArrayList<>(2);
+                    }
+                    result.add(waiting);
+                }
+            }
+            return result != null ? result : List.of();
+        }
+
+        List<WaitingBinding> startedBy(String participantId) {
+            Set<String> businessKeys = businessKeysByParticipant.get(participantId);
+            if (businessKeys == null) {
+                return List.of();
+            }
+            List<WaitingBinding> result = new ArrayList<>();
+            for (String businessKey : businessKeys) {
+                Map<String, WaitingBinding> bucket = byBusinessKey.get(businessKey);
+                if (bucket == null) {
+                    continue;
+                }
+                for (WaitingBinding waiting : bucket.values()) {
+                    if (participantId.equals(waiting.getCurrentParticipantId())) {
+                        result.add(waiting);
+                    }
+                }
+            }
+            return result;
+        }
+
+        List<WaitingBinding> all() {
+            List<WaitingBinding> result = new ArrayList<>();
+            byBusinessKey.values().forEach(bucket -> result.addAll(bucket.values()));
+            return result;
+        }
+
+        void clear() {
+            byBusinessKey.clear();
+            businessKeysByParticipant.clear();
+        }
+
+        // Both index helpers run inside the compute of the business key
+
+        private void index(WaitingBinding waiting) {
+            if (waiting.getCurrentParticipantId() == null) {
+                return;
+            }
+            businessKeysByParticipant.compute(waiting.getCurrentParticipantId(), (participantId, businessKeys) -> {
+                Set<String> updated = businessKeys != null ? businessKeys : ConcurrentHashMap.newKeySet();
+                updated.add(bucketKey(waiting.getBusinessKey()));
+                return updated;
+            });
+        }
+
+        private void unindex(Map<String, WaitingBinding> remaining, WaitingBinding removed) {
+            String participantId = removed.getCurrentParticipantId();
+            if (participantId == null) {
+                return;
+            }
+            for (WaitingBinding waiting : remaining.values()) {
+                if (participantId.equals(waiting.getCurrentParticipantId())) {
+                    return;
+                }
+            }
+            businessKeysByParticipant.computeIfPresent(participantId, (key, businessKeys) -> {
+                businessKeys.remove(bucketKey(removed.getBusinessKey()));
+                return businessKeys.isEmpty() ? null : businessKeys;
+            });
+        }
+    }
+}
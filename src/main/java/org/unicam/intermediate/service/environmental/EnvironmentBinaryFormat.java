@@ -0,0 +1,233 @@
+package org.unicam.intermediate.service.environmental;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.unicam.intermediate.models.enums.GeometryEngine;
+import org.unicam.intermediate.models.environmental.EnvironmentSnapshot;
+import org.unicam.intermediate.models.environmental.PackedCoordinates;
+import org.unicam.intermediate.models.environmental.PlaceCellGrid;
+import org.unicam.intermediate.models.pojo.EnvironmentData;
+import org.unicam.intermediate.models.pojo.Place;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Precompiled binary form of an environment, read at startup instead of parsing environment.json.
+ * The file is memory-mapped only to read it: polygons and cells are copied into heap arrays, so the
+ * gain is skipping the JSON parsing and the grid classification, not keeping the data off-heap.
+ *
+ * Layout (big endian): magic, version, source deployment id, geometry engine, a small JSON block with
+ * everything except the polygons, then per place the vertex count and the lon/lat arrays, then the
+ * classified cells of the {@link PlaceCellGrid}. The file is only valid for the deployment and the
+ * geometry engine it was written for; anything else is ignored and the JSON is parsed again.
+ */
+@Slf4j
+public final class EnvironmentBinaryFormat {
+
+    private static final int MAGIC = 0x424E5631; // "BNV1"
+    private static final int VERSION = 1;
+
+    private static final int NO_COORDINATES = -1;
+    private static final int CROWDED_CELL = -1;
+
+    private EnvironmentBinaryFormat() {
+    }
+
+    public record Cached(EnvironmentData data, PlaceCellGrid.Layout gridLayout) {
+    }
+
+    public static void write(Path file, String deploymentId, GeometryEngine engine,
+                             EnvironmentSnapshot snapshot, ObjectMapper objectMapper) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, deploymentId);
+            out.writeInt(engine.ordinal());
+
+            byte[] metadata = objectMapper.writeValueAsBytes(metadataOf(snapshot));
+            out.writeInt(metadata.length);
+            out.write(metadata);
+
+            out.writeInt(snapshot.getPlaces().size());
+            for (Place place : snapshot.getPlaces()) {
+                List<List<Double>> coordinates = place.getCoordinates();
+                if (coordinates == null) {
+                    out.writeInt(NO_COORDINATES);
+                    continue;
+                }
+                out.writeInt(coordinates.size());
+                if (coordinates instanceof PackedCoordinates packed) {
+                    for (double lon : packed.lons()) out.writeDouble(lon);
+                    for (double lat : packed.lats()) out.writeDouble(lat);
+                } else {
+                    for (List<Double> coordinate : coordinates) out.writeDouble(coordinate.get(0));
+                    for (List<Double> coordinate : coordinates) out.writeDouble(coordinate.get(1));
+                }
+            }
+
+            PlaceCellGrid.Layout grid = snapshot.getPlaceGrid().layout();
+            out.writeDouble(grid.originX());
+            out.writeDouble(grid.originY());
+            out.writeDouble(grid.cellWidth());
+            out.writeDouble(grid.cellHeight());
+            out.writeInt(grid.cols());
+            out.writeInt(grid.rows());
+            for (int[] cell : grid.cells()) {
+                if (cell == null) {
+                    out.writeInt(CROWDED_CELL);
+                    continue;
+                }
+                out.writeInt(cell.length);
+                for (int entry : cell) out.writeInt(entry);
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("[EnvironmentBinaryFormat] Wrote {} places to {} ({} bytes)",
+                snapshot.getPlaces().size(), file, Files.size(file));
+    }
+
+    /**
+     * Maps the file and decodes it into heap arrays; empty when it is missing or was written for another
+     * deployment or geometry engine. A file whose cells do not fit its places is rejected as corrupt.
+     */
+    public static Optional<Cached> read(Path file, String deploymentId, GeometryEngine engine,
+                                        EnvironmentJsonReader jsonReader) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                log.warn("[EnvironmentBinaryFormat] {} is not a binary environment of version {}", file, VERSION);
+                return Optional.empty();
+            }
+            String cachedDeploymentId = readString(buffer);
+            int cachedEngine = buffer.getInt();
+            if (!cachedDeploymentId.equals(deploymentId) || cachedEngine != engine.ordinal()) {
+                log.debug("[EnvironmentBinaryFormat] {} was written for deployment {} / engine {}, ignoring",
+                        file, cachedDeploymentId, cachedEngine);
+                return Optional.empty();
+            }
+
+            byte[] metadata = new byte[buffer.getInt()];
+            buffer.get(metadata);
+            EnvironmentData data = jsonReader.read(new ByteArrayInputStream(metadata));
+            List<Place> places = data.getPlaces() != null ? data.getPlaces() : new ArrayList<>();
+            data.setPlaces(places);
+
+            int placeCount = buffer.getInt();
+            if (placeCount != places.size()) {
+                throw new IOException("Corrupt binary environment: " + placeCount + " polygons for " + places.size() + " places");
+            }
+            for (Place place : places) {
+                int n = buffer.getInt();
+                if (n == NO_COORDINATES) {
+                    continue;
+                }
+                double[] lons = new double[n];
+                double[] lats = new double[n];
+                buffer.asDoubleBuffer().get(lons);
+                buffer.position(buffer.position() + n * Double.BYTES);
+                buffer.asDoubleBuffer().get(lats);
+                buffer.position(buffer.position() + n * Double.BYTES);
+                place.setCoordinates(new PackedCoordinates(lons, lats));
+            }
+
+            double originX = buffer.getDouble();
+            double originY = buffer.getDouble();
+            double cellWidth = buffer.getDouble();
+            double cellHeight = buffer.getDouble();
+            int cols = buffer.getInt();
+            int rows = buffer.getInt();
+            if (cols > 0 && !(cellWidth > 0 && cellHeight > 0 && Double.isFinite(originX) && Double.isFinite(originY))) {
+                throw new IOException("Corrupt binary environment: invalid grid geometry");
+            }
+            int[][] cells = new int[Math.multiplyExact(cols, rows)][];
+            for (int i = 0; i < cells.length; i++) {
+                int n = buffer.getInt();
+                if (n == CROWDED_CELL) {
+                    continue;
+                }
+                cells[i] = new int[n];
+                buffer.asIntBuffer().get(cells[i]);
+                buffer.position(buffer.position() + n * Integer.BYTES);
+                validateCell(cells[i], places);
+            }
+
+            return Optional.of(new Cached(data,
+                    new PlaceCellGrid.Layout(originX, originY, cellWidth, cellHeight, cols, rows, cells)));
+        } catch (BufferUnderflowException | ArithmeticException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt binary environment " + file, e);
+        }
+    }
+
+    // Entries must name places with a polygon, in ascending order, or lookups would fail or pick the wrong place
+    private static void validateCell(int[] entries, List<Place> places) throws IOException {
+        int previous = -1;
+        for (int entry : entries) {
+            int ordinal = entry >>> 1;
+            if (ordinal <= previous || ordinal >= places.size() || places.get(ordinal).getCoordinates() == null
+                    || places.get(ordinal).getCoordinates().isEmpty()) {
+                throw new IOException("Corrupt binary environment: cell entry for place " + ordinal
+                        + " of " + places.size());
+            }
+            previous = ordinal;
+        }
+    }
+
+    // Everything but the polygons, in the same shape as environment.json
+    private static Map<String, Object> metadataOf(EnvironmentSnapshot snapshot) {
+        List<Map<String, Object>> places = new ArrayList<>(snapshot.getPlaces().size());
+        for (Place place : snapshot.getPlaces()) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("id", place.getId());
+            fields.put("name", place.getName());
+            fields.put("temperature", place.getTemperature());
+            fields.put("attributes", place.getAttributes());
+            places.add(fields);
+        }
+
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("places", places);
+        metadata.put("edges", snapshot.getEdges());
+        metadata.put("logicalPlaces", snapshot.getLogicalPlaces());
+        metadata.put("views", snapshot.getViews());
+        return metadata;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
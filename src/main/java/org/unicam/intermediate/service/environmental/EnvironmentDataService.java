@@ -6,19 +6,37 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.camunda.bpm.engine.RepositoryService;
 import org.camunda.bpm.engine.repository.Deployment;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
+import org.unicam.intermediate.models.enums.GeometryEngine;
+import org.unicam.intermediate.models.environmental.EnvironmentSnapshot;
 import org.unicam.intermediate.models.environmental.LocationArea;
+import org.unicam.intermediate.models.environmental.PlaceCellGrid;
+import org.unicam.intermediate.models.pojo.Edge;
 import org.unicam.intermediate.models.pojo.EnvironmentData;
 import org.unicam.intermediate.models.pojo.Place;
 import org.unicam.intermediate.models.pojo.LogicalPlace;
 import org.unicam.intermediate.models.pojo.View;
+import org.unicam.intermediate.models.record.EnvironmentDiff;
 
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 @Service
 @Slf4j
@@ -28,13 +46,26 @@ public class EnvironmentDataService {
 
     private final RepositoryService repositoryService;
     private final ObjectMapper objectMapper;
+    private final EnvironmentJsonReader jsonReader;
+    private final GeometryEngine geometryEngine;
+    private final double placeHysteresisMeters;
 
-    // Hold the data directly in the service
-    private EnvironmentData data = new EnvironmentData();
+    // Optional precompiled binary copy of the environment (null = disabled)
+    private final Path binaryCache;
 
-    public EnvironmentDataService(RepositoryService repositoryService) {
+    // Current environment, swapped atomically on reload so readers never see a half-built one
+    private volatile EnvironmentSnapshot snapshot = EnvironmentSnapshot.empty();
+
+    public EnvironmentDataService(RepositoryService repositoryService,
+                                  @Value("${environment.geometry-engine:WINDING_NUMBER}") GeometryEngine geometryEngine,
+                                  @Value("${environment.place-hysteresis-meters:0}") double placeHysteresisMeters,
+                                  @Value("${environment.binary-cache:}") String binaryCache) {
         this.repositoryService = repositoryService;
         this.objectMapper = new ObjectMapper();
+        this.jsonReader = new EnvironmentJsonReader(objectMapper);
+        this.geometryEngine = geometryEngine;
+        this.placeHysteresisMeters = placeHysteresisMeters;
+        this.binaryCache = binaryCache == null || binaryCache.isBlank() ? null : Path.of(binaryCache);
     }
 
     @PostConstruct
@@ -42,7 +73,38 @@ public class EnvironmentDataService {
         loadEnvironmentData();
     }
 
-    public void loadEnvironmentData() {
+    public synchronized void loadEnvironmentData() {
+        Optional<LoadedEnvironment> loaded = readLatestEnvironment(true);
+        if (loaded.isEmpty()) {
+            // Initialize with empty data if nothing found
+            this.snapshot = EnvironmentSnapshot.empty();
+            log.warn("[EnvironmentService] No environment.json found in any deployment, initialized with empty data");
+            return;
+        }
+
+        EnvironmentData data = loaded.get().data();
+        compileLocationAreas(data.getPlaces());
+        EnvironmentSnapshot loadedSnapshot = loaded.get().gridLayout() != null
+                ? EnvironmentSnapshot.of(data, loaded.get().gridLayout())
+                : EnvironmentSnapshot.of(data);
+        this.snapshot = loadedSnapshot;
+        writeBinaryCache(loaded.get(), loadedSnapshot);
+
+        log.info("[EnvironmentService] Environment loaded with {} places, {} edges, {} logical places",
+                loadedSnapshot.getPlaces().size(),
+                loadedSnapshot.getEdges().size(),
+                loadedSnapshot.getLogicalPlaces().size());
+    }
+
+    // Environment as read from the latest deployment; gridLayout is only set when it came from the binary cache
+    private record LoadedEnvironment(String deploymentId, EnvironmentData data, PlaceCellGrid.Layout gridLayout) {
+    }
+
+    /**
+     * With {@code skipUnreadable} an environment.json that cannot be read is logged and the previous
+     * deployment is tried, otherwise the failure is thrown
+     */
+    private Optional<LoadedEnvironment> readLatestEnvironment(boolean skipUnreadable) {
         List<Deployment> deployments = repositoryService
                 .createDeploymentQuery()
                 .orderByDeploymentTime().desc()
@@ -52,63 +114,270 @@ public class EnvironmentDataService {
             List<String> resources = repositoryService.getDeploymentResourceNames(deployment.getId());
             for (String res : resources) {
                 if ("environment.json".equals(res)) {
+                    Optional<LoadedEnvironment> cached = readBinaryCache(deployment);
+                    if (cached.isPresent()) {
+                        return cached;
+                    }
+
                     try (InputStream is = repositoryService.getResourceAsStream(deployment.getId(), res)) {
-                        this.data = objectMapper.readValue(is, EnvironmentData.class);
-                        log.info("[EnvironmentService] Environment loaded from deployment '{}' with {} places, {} edges, {} logical places",
-                                deployment.getName(),
-                                data.getPlaces() != null ? data.getPlaces().size() : 0,
-                                data.getEdges() != null ? data.getEdges().size() : 0,
-                                data.getLogicalPlaces() != null ? data.getLogicalPlaces().size() : 0);
-                        return;
+                        EnvironmentData loaded = jsonReader.read(is);
+                        log.debug("[EnvironmentService] Read environment.json from deployment '{}'", deployment.getName());
+                        return Optional.of(new LoadedEnvironment(deployment.getId(), loaded, null));
                     } catch (IOException e) {
+                        if (!skipUnreadable) {
+                            throw new UncheckedIOException("Failed to read environment.json from deployment '"
+                                    + deployment.getName() + "'", e);
+                        }
                         log.error("[EnvironmentService] Failed to read environment.json from deployment '{}': {}",
                                 deployment.getName(), e.getMessage(), e);
                     }
                 }
             }
         }
+        return Optional.empty();
+    }
+
+    private Optional<LoadedEnvironment> readBinaryCache(Deployment deployment) {
+        if (binaryCache == null) {
+            return Optional.empty();
+        }
+        try {
+            return EnvironmentBinaryFormat.read(binaryCache, deployment.getId(), geometryEngine, jsonReader)
+                    .map(cached -> {
+                        log.info("[EnvironmentService] Environment of deployment '{}' read from {}",
+                                deployment.getName(), binaryCache);
+                        return new LoadedEnvironment(deployment.getId(), cached.data(), cached.gridLayout());
+                    });
+        } catch (IOException e) {
+            log.warn("[EnvironmentService] Ignoring binary environment {}: {}", binaryCache, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void writeBinaryCache(LoadedEnvironment loaded, EnvironmentSnapshot written) {
+        if (binaryCache == null || loaded.gridLayout() != null) {
+            return;
+        }
+        try {
+            EnvironmentBinaryFormat.write(binaryCache, loaded.deploymentId(), geometryEngine, written, objectMapper);
+        } catch (IOException e) {
+            log.warn("[EnvironmentService] Could not write binary environment {}: {}", binaryCache, e.getMessage());
+        }
+    }
+
+    private void compileLocationAreas(List<Place> places) {
+        if (places == null) {
+            return;
+        }
+        places.forEach(this::compileLocationArea);
+    }
+
+    private void compileLocationArea(Place place) {
+        if (place.getCoordinates() != null && !place.getCoordinates().isEmpty()) {
+            place.setLocationArea(new LocationArea(place.getCoordinates(), geometryEngine));
+        }
+    }
+
+    /**
+     * Re-reads environment.json and applies it on top of the current snapshot. Unchanged places,
+     * edges and logical places are carried over as they are, a place whose polygon did not change
+     * keeps its compiled area, and when polygons were only reshaped in place just the grid cells under
+     * their old and new bounding boxes are classified again (the R-tree is repacked, which needs no
+     * polygon test). Adding, removing or reordering places rebuilds the spatial index and grid.
+     * If environment.json is missing or unreadable the reload fails and the current snapshot is kept.
+     */
+    public synchronized EnvironmentDiff reloadIncrementally() {
+        EnvironmentSnapshot current = snapshot;
+        LoadedEnvironment loaded = readLatestEnvironment(false)
+                .orElseThrow(() -> new IllegalStateException("No environment.json found in any deployment"));
+        EnvironmentData next = loaded.data();
+
+        Set<String> added = new LinkedHashSet<>();
+        Set<String> reshaped = new LinkedHashSet<>();
+        Set<String> updated = new LinkedHashSet<>();
+
+        List<Place> places = new ArrayList<>();
+        for (Place place : nonNull(next.getPlaces())) {
+            Place previous = place.getId() != null ? current.getPlacesById().get(place.getId()) : null;
+            if (previous == null) {
+                compileLocationArea(place);
+                added.add(place.getId());
+                places.add(place);
+            } else if (!Objects.equals(previous.getCoordinates(), place.getCoordinates())) {
+                compileLocationArea(place);
+                reshaped.add(place.getId());
+                places.add(place);
+            } else if (!sameAttributes(previous, place)) {
+                place.setLocationArea(previous.getLocationArea());
+                updated.add(place.getId());
+                places.add(place);
+            } else {
+                places.add(previous);
+            }
+        }
+
+        Set<String> removed = new LinkedHashSet<>(current.getPlacesById().keySet());
+        places.forEach(place -> removed.remove(place.getId()));
+
+        boolean layoutChanged = !added.isEmpty() || !removed.isEmpty()
+                || !sameIds(current.getPlaces(), places, Place::getId);
+        boolean geometryChanged = layoutChanged || !reshaped.isEmpty();
+
+        EnvironmentData merged = new EnvironmentData();
+        merged.setPlaces(places);
+        merged.setEdges(reuseUnchanged(current.getEdges(), nonNull(next.getEdges()), Edge::getId));
+        merged.setLogicalPlaces(reuseUnchanged(current.getLogicalPlaces(), nonNull(next.getLogicalPlaces()), LogicalPlace::getId));
+        merged.setViews(nonNull(next.getViews()));
+
+        EnvironmentDiff diff = new EnvironmentDiff(
+                added, removed, reshaped, updated,
+                changedIds(current.getEdges(), merged.getEdges(), Edge::getId),
+                changedIds(current.getLogicalPlaces(), merged.getLogicalPlaces(), LogicalPlace::getId),
+                !current.getViews().equals(merged.getViews()),
+                geometryChanged);
+
+        if (diff.isEmpty()) {
+            log.info("[EnvironmentService] Environment reloaded, nothing changed");
+            return diff;
+        }
+
+        if (layoutChanged) {
+            this.snapshot = EnvironmentSnapshot.of(merged);
+        } else if (geometryChanged) {
+            int[] reshapedPositions = IntStream.range(0, places.size())
+                    .filter(i -> reshaped.contains(places.get(i).getId()))
+                    .toArray();
+            this.snapshot = current.withReshapedPlaces(merged, reshapedPositions);
+        } else {
+            this.snapshot = current.withSameGeometry(merged);
+        }
+        writeBinaryCache(loaded, snapshot);
+        log.info("[EnvironmentService] Environment reloaded incrementally: places +{} -{} ~{} reshaped {}, " +
+                        "edges changed {}, logical places changed {}, spatial index {}",
+                added.size(), removed.size(), updated.size(), reshaped.size(),
+                diff.changedEdges().size(), diff.changedLogicalPlaces().size(),
+                layoutChanged ? "rebuilt" : geometryChanged ? "updated" : "reused");
+        return diff;
+    }
+
+    private static boolean sameAttributes(Place a, Place b) {
+        return Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getTemperature(), b.getTemperature())
+                && Objects.equals(a.getAttributes(), b.getAttributes());
+    }
+
+    // Elements equal to the one with the same id in the current snapshot are replaced by it
+    private static <T> List<T> reuseUnchanged(List<T> current, List<T> next, Function<T, String> id) {
+        Map<String, T> byId = new HashMap<>();
+        current.forEach(element -> byId.putIfAbsent(id.apply(element), element));
+
+        List<T> result = new ArrayList<>(next.size());
+        for (T element : next) {
+            T previous = byId.get(id.apply(element));
+            result.add(element.equals(previous) ? previous : element);
+        }
+        return result;
+    }
+
+    // Ids of elements added, removed or changed; unchanged ones are the same instance after reuseUnchanged
+    private static <T> Set<String> changedIds(List<T> current, List<T> next, Function<T, String> id) {
+        Set<T> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(current);
+
+        Set<String> changed = new LinkedHashSet<>();
+        Set<T> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (T element : next) {
+            if (!kept.contains(element)) {
+                changed.add(id.apply(element));
+            }
+            seen.add(element);
+        }
+        for (T element : current) {
+            if (!seen.contains(element)) {
+                changed.add(id.apply(element));
+            }
+        }
+        return changed;
+    }
 
-        // Initialize with empty data if nothing found
-        this.data = new EnvironmentData();
-        this.data.setPlaces(List.of());
-        this.data.setEdges(List.of());
-        this.data.setLogicalPlaces(List.of());
-        this.data.setViews(List.of());
+    private static <T> boolean sameIds(List<T> a, List<T> b, Function<T, String> id) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!Objects.equals(id.apply(a.get(i)), id.apply(b.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        log.warn("[EnvironmentService] No environment.json found in any deployment, initialized with empty data");
+    private static <T> List<T> nonNull(List<T> list) {
+        return list != null ? list.stream().filter(Objects::nonNull).toList() : List.of();
     }
 
     // Convenience methods for accessing data
 
+    public EnvironmentData getData() {
+        return snapshot.getData();
+    }
+
     public List<Place> getPlaces() {
-        return data != null && data.getPlaces() != null ? data.getPlaces() : List.of();
+        return snapshot.getPlaces();
     }
 
     public List<LogicalPlace> getLogicalPlaces() {
-        return data != null && data.getLogicalPlaces() != null ? data.getLogicalPlaces() : List.of();
+        return snapshot.getLogicalPlaces();
     }
 
     public List<View> getViews() {
-        return data != null && data.getViews() != null ? data.getViews() : List.of();
+        return snapshot.getViews();
     }
 
     public Optional<Place> findPlaceById(String placeId) {
-        if (placeId == null || data == null || data.getPlaces() == null || data.getPlaces().isEmpty()) {
-            return Optional.empty();
-        }
-        return data.getPlaces().stream()
-                .filter(p -> placeId.equals(p.getId()))
-                .findFirst();
+        return snapshot.findPlaceById(placeId);
+    }
+
+    public Optional<LogicalPlace> findLogicalPlaceById(String logicalPlaceId) {
+        return snapshot.findLogicalPlaceById(logicalPlaceId);
+    }
+
+    public Optional<View> findViewById(String viewId) {
+        return snapshot.findViewById(viewId);
     }
 
     public Optional<Place> findPlaceContainingLocation(double lat, double lon) {
-        if (data == null || data.getPlaces() == null) {
-            return Optional.empty();
+        return snapshot.getPlaceGrid().findFirstContaining(lat, lon);
+    }
+
+    /**
+     * Same as {@link #findPlaceContainingLocation(double, double)} but starts from the place the
+     * participant was last seen in: that place is re-tested first, then the places adjacent to it
+     * in the edge graph, and only then the global grid. While the point stays within
+     * {@code environment.place-hysteresis-meters} of the previous place the participant is kept
+     * there, so GPS jitter on a shared wall does not flip the place on every sample.
+     */
+    public Optional<Place> findPlaceContainingLocation(double lat, double lon, String previousPlaceId) {
+        EnvironmentSnapshot current = snapshot;
+        List<Place> neighbourhood = previousPlaceId != null ? current.getNeighbourhoods().get(previousPlaceId) : null;
+        if (neighbourhood == null) {
+            return current.getPlaceGrid().findFirstContaining(lat, lon);
         }
-        return data.getPlaces().stream()
-                .filter(place -> place.getLocationArea() != null &&
-                        place.getLocationArea().contains(lat, lon))
-                .findFirst();
+
+        Place previous = neighbourhood.get(0);
+        LocationArea previousArea = previous.getLocationArea();
+        if (previousArea.contains(lat, lon)
+                || (placeHysteresisMeters > 0 && previousArea.distanceMeters(lat, lon) <= placeHysteresisMeters)) {
+            return Optional.of(previous);
+        }
+
+        for (int i = 1; i < neighbourhood.size(); i++) {
+            Place adjacent = neighbourhood.get(i);
+            if (adjacent.getLocationArea().contains(lat, lon)) {
+                return Optional.of(adjacent);
+            }
+        }
+        return current.getPlaceGrid().findFirstContaining(lat, lon);
     }
 
     public boolean isLocationInPlace(double lat, double lon, String placeId) {
@@ -125,11 +394,12 @@ public class EnvironmentDataService {
     }
 
     public boolean isLoaded() {
-        return data != null && data.getPlaces() != null && !data.getPlaces().isEmpty();
+        return !snapshot.isEmpty();
     }
 
-    public void reloadEnvironment() {
-        loadEnvironmentData();
+    public EnvironmentDiff reloadEnvironment() {
+        EnvironmentDiff diff = reloadIncrementally();
         log.info("[EnvironmentDataService] Environment data reloaded");
+        return diff;
     }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package org.unicam.intermediate.service.environmental;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.unicam.intermediate.models.environmental.PackedCoordinates;
+import org.unicam.intermediate.models.pojo.Edge;
+import org.unicam.intermediate.models.pojo.EnvironmentData;
+import org.unicam.intermediate.models.pojo.LogicalPlace;
+import org.unicam.intermediate.models.pojo.Place;
+import org.unicam.intermediate.models.pojo.View;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming reader for environment.json. Places are read token by token and their polygons go
+ * straight into {@link PackedCoordinates}, so the file is never materialized as a tree or as
+ * nested {@code List<List<Double>>}. Edges, logical places and views are small and are still
+ * bound by the ObjectMapper. Unknown fields are skipped in every section.
+ */
+public class EnvironmentJsonReader {
+
+    private static final TypeReference<List<Edge>> EDGES = new TypeReference<>() {};
+    private static final TypeReference<List<LogicalPlace>> LOGICAL_PLACES = new TypeReference<>() {};
+    private static final TypeReference<List<View>> VIEWS = new TypeReference<>() {};
+    private static final TypeReference<Map<String, Object>> ATTRIBUTES = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader edgesReader;
+    private final ObjectReader logicalPlacesReader;
+    private final ObjectReader viewsReader;
+    private final ObjectReader attributesReader;
+
+    public EnvironmentJsonReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.edgesReader = lenientReader(EDGES);
+        this.logicalPlacesReader = lenientReader(LOGICAL_PLACES);
+        this.viewsReader = lenientReader(VIEWS);
+        this.attributesReader = lenientReader(ATTRIBUTES);
+    }
+
+    private ObjectReader lenientReader(TypeReference<?> type) {
+        return objectMapper.readerFor(type).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    public EnvironmentData read(InputStream in) throws IOException {
+        EnvironmentData data = new EnvironmentData();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "places" -> data.setPlaces(readPlaces(parser));
+                    case "edges" -> data.setEdges(readList(parser, edgesReader));
+                    case "logicalPlaces" -> data.setLogicalPlaces(readList(parser, logicalPlacesReader));
+                    case "views" -> data.setViews(readList(parser, viewsReader));
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return data;
+    }
+
+    private static <T> List<T> readList(JsonParser parser, ObjectReader reader) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return reader.readValue(parser);
+    }
+
+    private List<Place> readPlaces(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+
+        List<Place> places = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+            places.add(readPlace(parser));
+        }
+        return places;
+    }
+
+    private Place readPlace(JsonParser parser) throws IOException {
+        Place place = new Place();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id" -> place.setId(readString(parser));
+                case "name" -> place.setName(readString(parser));
+                case "temperature" -> place.setTemperature(readString(parser));
+                case "coordinates" -> place.setCoordinates(readCoordinates(parser));
+                case "attributes" -> place.setAttributes(
+                        parser.currentToken() == JsonToken.VALUE_NULL ? null : attributesReader.readValue(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        return place;
+    }
+
+    private static String readString(JsonParser parser) throws IOException {
+        if (parser.currentToken().isScalarValue()) {
+            return parser.getValueAsString();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static PackedCoordinates readCoordinates(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+
+        double[] lons = new double[8];
+        double[] lats = new double[8];
+        int n = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+            double lon = readNumber(parser);
+            double lat = readNumber(parser);
+            // Ignore any extra ordinate (e.g. altitude)
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                parser.skipChildren();
+            }
+
+            if (n == lons.length) {
+                lons = Arrays.copyOf(lons, n * 2);
+                lats = Arrays.copyOf(lats, n * 2);
+            }
+            lons[n] = lon;
+            lats[n] = lat;
+            n++;
+        }
+        return new PackedCoordinates(Arrays.copyOf(lons, n), Arrays.copyOf(lats, n));
+    }
+
+    private static double readNumber(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+            throw new JsonParseException(parser, "Expected a [lon, lat] pair of numbers but found " + token);
+        }
+        return parser.getDoubleValue();
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+}
@@ -23,14 +23,13 @@ import java.util.*;
 public class LocationEventService {
 
     private final ApplicationEventPublisher eventPublisher;
-    private final EnvironmentDataService environmentDataService;
     private final ParticipantPositionService positionService;
     private final UserParticipantMappingService userParticipantMapping;
     private final TaskTrackingService taskTrackingService;
     private final GpsProcessingService gpsProcessingService;
     private final BindingService bindingService;
     private final ProximityService proximityService;
-    private final BindingProximityMonitor bindingProximityMonitor;
+    private final BindingMatcher bindingMatcher;
 
     /**
      * Publish location update and let the engine handle it
@@ -40,15 +39,12 @@ public class LocationEventService {
         Map<String, Object> result = new HashMap<>();
         List<String> triggeredEvents = new ArrayList<>();
 
-        // 1. Determine which place the location is in
-        Optional<Place> currentPlace = environmentDataService.findPlaceContainingLocation(lat, lon);
+        // 1. Determine which place the location is in and update position (using existing service)
+        Optional<Place> currentPlace = positionService.updatePosition(participantId, lat, lon);
         String placeId = currentPlace.map(Place::getId).orElse(null);
         String placeName = currentPlace.map(Place::getName).orElse("Unknown");
 
-        // 2. Update position (using existing service)
-        positionService.updatePosition(participantId, lat, lon, placeId);
-
-        // 3. Create and publish event
+        // 2. Create and publish event
         LocationUpdateEvent event = new LocationUpdateEvent(
                 this,
                 userId,
@@ -64,7 +60,7 @@ public class LocationEventService {
         eventPublisher.publishEvent(event);
         triggeredEvents.add("LOCATION_UPDATE");
 
-        // 4. Process movement tasks using EXISTING service
+        // 3. Process movement tasks using EXISTING service
         MovementResponse movementResponse = gpsProcessingService.processUserLocation(userId, lat, lon);
         if (movementResponse.success()) {
             triggeredEvents.add("MOVEMENT_COMPLETED");
@@ -72,7 +68,7 @@ public class LocationEventService {
             result.put("movementMessage", movementResponse.message());
         }
 
-        // 5. Check for binding/unbinding readiness using EXISTING logic
+        // 4. Check for binding/unbinding readiness using EXISTING logic
         if (businessKey != null && participantId != null) {
             Map<String, Object> bindingStatus = checkBindingStatusUsingExistingServices(
                     participantId, businessKey);
@@ -106,13 +102,8 @@ public class LocationEventService {
         List<String> unbindingReady = new ArrayList<>();
         List<String> waitingFor = new ArrayList<>();
 
-        // Use EXISTING bindingService to get waiting bindings
-        List<WaitingBinding> allWaitingBindings = bindingService.getAllWaitingBindings();
-        List<WaitingBinding> relevantBindings = allWaitingBindings.stream()
-                .filter(wb -> wb.getBusinessKey().equals(businessKey))
-                .filter(wb -> wb.getCurrentParticipantId().equals(participantId) ||
-                        wb.getTargetParticipantId().equals(participantId))
-                .toList();
+        // Only the entries of this business key involving the participant
+        List<WaitingBinding> relevantBindings = bindingService.waitingBindingsFor(businessKey, participantId);
 
         for (WaitingBinding wb : relevantBindings) {
             String otherParticipant = wb.getCurrentParticipantId().equals(participantId)
@@ -132,13 +123,8 @@ public class LocationEventService {
             }
         }
 
-        // Check unbindings using EXISTING service
-        List<WaitingBinding> allWaitingUnbindings = bindingService.getAllWaitingUnbindings();
-        List<WaitingBinding> relevantUnbindings = allWaitingUnbindings.stream()
-                .filter(wu -> wu.getBusinessKey().equals(businessKey))
-                .filter(wu -> wu.getCurrentParticipantId().equals(participantId) ||
-                        wu.getTargetParticipantId().equals(participantId))
-                .toList();
+        // Check unbindings the same way
+        List<WaitingBinding> relevantUnbindings = bindingService.waitingUnbindingsFor(businessKey, participantId);
 
         for (WaitingBinding wu : relevantUnbindings) {
             String otherParticipant = wu.getCurrentParticipantId().equals(participantId)
@@ -178,9 +164,9 @@ public class LocationEventService {
 
 
     /**
-     * Manually trigger binding/unbinding check - delegates to EXISTING monitor
+     * Manually trigger binding/unbinding check over every waiting entry
      */
     public void triggerBindingCheck() {
-        bindingProximityMonitor.checkWaitingBindings();
+        bindingMatcher.sweep();
     }
 }
\ No newline at end of file
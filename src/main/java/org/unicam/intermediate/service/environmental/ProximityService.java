@@ -31,8 +31,8 @@ public class ProximityService {
         }
         
         // Find which place each participant is in
-        Optional<Place> place1 = environmentDataService.findPlaceContainingLocation(pos1.lat, pos1.lon);
-        Optional<Place> place2 = environmentDataService.findPlaceContainingLocation(pos2.lat, pos2.lon);
+        Optional<Place> place1 = environmentDataService.findPlaceContainingLocation(pos1.lat, pos1.lon, pos1.destination);
+        Optional<Place> place2 = environmentDataService.findPlaceContainingLocation(pos2.lat, pos2.lon, pos2.destination);
         
         // Both must be in a place, and it must be the same place
         if (place1.isPresent() && place2.isPresent()) {
@@ -70,8 +70,8 @@ public class ProximityService {
             return null;
         }
         
-        Optional<Place> place1 = environmentDataService.findPlaceContainingLocation(pos1.lat, pos1.lon);
-        Optional<Place> place2 = environmentDataService.findPlaceContainingLocation(pos2.lat, pos2.lon);
+        Optional<Place> place1 = environmentDataService.findPlaceContainingLocation(pos1.lat, pos1.lon, pos1.destination);
+        Optional<Place> place2 = environmentDataService.findPlaceContainingLocation(pos2.lat, pos2.lon, pos2.destination);
         
         if (place1.isPresent() && place2.isPresent() && 
             place1.get().getId().equals(place2.get().getId())) {
@@ -92,8 +92,8 @@ public class ProximityService {
             return new BindingReadiness(false, null, "Missing position data");
         }
         
-        Optional<Place> place1 = environmentDataService.findPlaceContainingLocation(pos1.lat, pos1.lon);
-        Optional<Place> place2 = environmentDataService.findPlaceContainingLocation(pos2.lat, pos2.lon);
+        Optional<Place> place1 = environmentDataService.findPlaceContainingLocation(pos1.lat, pos1.lon, pos1.destination);
+        Optional<Place> place2 = environmentDataService.findPlaceContainingLocation(pos2.lat, pos2.lon, pos2.destination);
         
         if (!place1.isPresent()) {
             return new BindingReadiness(false, null, 
@@ -43,11 +43,7 @@ public class TemperatureService {
 
     public double getTemperatureFromPlace(String placeId){
         try {
-            Optional<Place> maybePlace = environmentDataService.getData() // Use service
-                    .getPlaces()
-                    .stream()
-                    .filter(p -> p.getId().equals(placeId))
-                    .findFirst();
+            Optional<Place> maybePlace = environmentDataService.findPlaceById(placeId);
 
             if (maybePlace.isEmpty()) throw new IllegalStateException("Place with id " + placeId + " not found");
 
@@ -10,14 +10,14 @@ import org.camunda.bpm.engine.repository.ProcessDefinition;
 import org.camunda.bpm.engine.runtime.Execution;
 import org.camunda.bpm.engine.runtime.ProcessInstance;
 import org.springframework.stereotype.Service;
-import org.unicam.intermediate.models.WaitingBinding;
 import org.unicam.intermediate.models.pojo.Place;
 import org.unicam.intermediate.models.record.MovementResponse;
 import org.unicam.intermediate.models.record.MovementTask;
 import org.unicam.intermediate.models.enums.TaskType;
-import org.unicam.intermediate.service.environmental.BindingService;
+import org.unicam.intermediate.service.BusinessKeyExecutor;
+import org.unicam.intermediate.service.SignalDispatcher;
+import org.unicam.intermediate.service.environmental.BindingMatcher;
 import org.unicam.intermediate.service.environmental.EnvironmentDataService;
-import org.unicam.intermediate.service.environmental.ProximityService;
 import org.unicam.intermediate.service.participant.ParticipantPositionService;
 import org.unicam.intermediate.service.participant.UserParticipantMappingService;
 import org.unicam.intermediate.service.xml.AbstractXmlService;
@@ -25,9 +25,6 @@ import org.unicam.intermediate.service.xml.XmlServiceDispatcher;
 import org.unicam.intermediate.utils.Constants;
 
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 @Service
 @Slf4j
@@ -37,14 +34,14 @@ public class GpsProcessingService {
     private final RuntimeService runtimeService;
     private final RepositoryService repositoryService;
     private final MovementService movementService;
-    private final BindingService bindingService;
-    private final ProximityService proximityService;
+    private final BindingMatcher bindingMatcher;
     private final EnvironmentDataService environmentDataService;
     private final ParticipantPositionService positionService;
     private final UserParticipantMappingService userParticipantMapping;
     private final XmlServiceDispatcher xmlServiceDispatcher;
+    private final SignalDispatcher signalDispatcher;
+    private final BusinessKeyExecutor businessKeyExecutor;
 
-    private static final ExecutorService executorService = Executors.newFixedThreadPool(5);
 
     /**
      * Main entry point for processing GPS coordinates from a user
@@ -64,11 +61,19 @@ public class GpsProcessingService {
             return MovementResponse.noActiveTasks(userId);
         }
 
+        // Same actor as the WebSocket updates of the business key
+        return businessKeyExecutor.call(context.getBusinessKey(), () -> processTrackedLocation(userId, context, lat, lon));
+    }
+
+    private MovementResponse processTrackedLocation(String userId, UserParticipantMappingService.TrackingContext context,
+                                                    double lat, double lon) {
         String participantId = context.getParticipantId();
         String businessKey = context.getBusinessKey();
 
         // Always update position first
+        String previousPlace = positionService.getPlaceId(participantId);
         updateParticipantPosition(participantId, lat, lon);
+        boolean placeChanged = !Objects.equals(previousPlace, positionService.getPlaceId(participantId));
 
         // 1. Check MOVEMENT tasks
         List<MovementTask> movementTasks = findActiveMovementTasksForUser(userId);
@@ -79,20 +84,12 @@ public class GpsProcessingService {
             }
         }
 
-        // 2. Check BINDING readiness
-        if (businessKey != null) {
-            boolean bindingTriggered = checkAndTriggerBindings(participantId, businessKey);
-            if (bindingTriggered) {
-                log.info("[GPS Service] Binding conditions met for participant: {}", participantId);
+        // 2-3. Check BINDING / UNBINDING readiness, only possible after entering another place
+        if (businessKey != null && placeChanged) {
+            for (BindingMatcher.Match match : bindingMatcher.onPlaceChanged(businessKey, participantId)) {
+                log.info("[GPS Service] {} conditions met for participant: {}", match.taskType(), participantId);
                 // Don't return success here, as binding is a background process
             }
-
-            // 3. Check UNBINDING readiness
-            boolean unbindingTriggered = checkAndTriggerUnbindings(participantId, businessKey);
-            if (unbindingTriggered) {
-                log.info("[GPS Service] Unbinding conditions met for participant: {}", participantId);
-                // Don't return success here, as unbinding is a background process
-            }
         }
 
         // No movement task completed
@@ -105,126 +102,6 @@ public class GpsProcessingService {
         return MovementResponse.noActiveTasks(userId);
     }
 
-    /**
-     * Check if waiting bindings can now proceed
-     */
-    private boolean checkAndTriggerBindings(String participantId, String businessKey) {
-        List<WaitingBinding> waitingBindings = bindingService.getAllWaitingBindings();
-        boolean triggered = false;
-
-        for (WaitingBinding wb : waitingBindings) {
-            if (!wb.getBusinessKey().equals(businessKey)) continue;
-
-            // Check if this participant is involved
-            if (wb.getCurrentParticipantId().equals(participantId) ||
-                    wb.getTargetParticipantId().equals(participantId)) {
-
-                // Check if both participants are in the same place
-                Place bindingPlace = proximityService.getBindingPlace(
-                        wb.getCurrentParticipantId(),
-                        wb.getTargetParticipantId());
-
-                if (bindingPlace != null) {
-                    log.info("[GPS Service] Binding ready! Participants {} and {} are both in {}",
-                            wb.getCurrentParticipantId(), wb.getTargetParticipantId(),
-                            bindingPlace.getName());
-
-                    // Find the matching waiting binding for the other participant
-                    Optional<WaitingBinding> otherWaiting = bindingService.findWaitingBinding(
-                            businessKey, wb.getTargetParticipantId());
-
-                    if (otherWaiting.isPresent()) {
-                        // Both are waiting and in same place - signal both
-                        signalBinding(wb, otherWaiting.get());
-                        triggered = true;
-                    }
-                }
-            }
-        }
-
-        return triggered;
-    }
-
-    /**
-     * Check if waiting unbindings can now proceed
-     */
-    private boolean checkAndTriggerUnbindings(String participantId, String businessKey) {
-        List<WaitingBinding> waitingUnbindings = bindingService.getAllWaitingUnbindings();
-        boolean triggered = false;
-
-        for (WaitingBinding wu : waitingUnbindings) {
-            if (!wu.getBusinessKey().equals(businessKey)) continue;
-
-            // Check if this participant is involved
-            if (wu.getCurrentParticipantId().equals(participantId) ||
-                    wu.getTargetParticipantId().equals(participantId)) {
-
-                // Check if both participants are in the same place
-                Place unbindingPlace = proximityService.getBindingPlace(
-                        wu.getCurrentParticipantId(),
-                        wu.getTargetParticipantId());
-
-                if (unbindingPlace != null) {
-                    log.info("[GPS Service] Unbinding ready! Participants {} and {} are both in {}",
-                            wu.getCurrentParticipantId(), wu.getTargetParticipantId(),
-                            unbindingPlace.getName());
-
-                    // Find the matching waiting unbinding for the other participant
-                    Optional<WaitingBinding> otherWaiting = bindingService.findWaitingUnbinding(
-                            businessKey, wu.getTargetParticipantId());
-
-                    if (otherWaiting.isPresent()) {
-                        // Both are waiting and in same place - signal both
-                        signalUnbinding(wu, otherWaiting.get());
-                        triggered = true;
-                    }
-                }
-            }
-        }
-
-        return triggered;
-    }
-
-    private void signalBinding(WaitingBinding binding1, WaitingBinding binding2) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                // Remove from waiting
-                bindingService.removeWaitingBinding(binding1.getBusinessKey(), binding1.getTargetParticipantId());
-                bindingService.removeWaitingBinding(binding2.getBusinessKey(), binding2.getTargetParticipantId());
-
-                // Signal both executions
-                runtimeService.signal(binding1.getExecutionId());
-                runtimeService.signal(binding2.getExecutionId());
-
-                log.info("[GPS Service] Successfully signaled binding for participants {} and {}",
-                        binding1.getCurrentParticipantId(), binding2.getCurrentParticipantId());
-
-            } catch (Exception e) {
-                log.error("[GPS Service] Failed to signal binding", e);
-            }
-        }, executorService);
-    }
-
-    private void signalUnbinding(WaitingBinding unbinding1, WaitingBinding unbinding2) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                // Remove from waiting
-                bindingService.removeWaitingUnbinding(unbinding1.getBusinessKey(), unbinding1.getTargetParticipantId());
-                bindingService.removeWaitingUnbinding(unbinding2.getBusinessKey(), unbinding2.getTargetParticipantId());
-
-                // Signal both executions
-                runtimeService.signal(unbinding1.getExecutionId());
-                runtimeService.signal(unbinding2.getExecutionId());
-
-                log.info("[GPS Service] Successfully signaled unbinding for participants {} and {}",
-                        unbinding1.getCurrentParticipantId(), unbinding2.getCurrentParticipantId());
-
-            } catch (Exception e) {
-                log.error("[GPS Service] Failed to signal unbinding", e);
-            }
-        }, executorService);
-    }
-
     /**
      * Process location for a specific process instance
      */
@@ -235,28 +112,30 @@ public class GpsProcessingService {
         UserParticipantMappingService.TrackingContext context =
                 userParticipantMapping.getActiveTracking(userId);
         String participantId = context != null ? context.getParticipantId() : userId;
+        String businessKey = context != null ? context.getBusinessKey() : null;
 
-        updateParticipantPosition(participantId, lat, lon);
+        return businessKeyExecutor.call(businessKey, () -> {
+            updateParticipantPosition(participantId, lat, lon);
 
-        List<MovementTask> tasks = findMovementTasksForProcess(processInstanceId, userId);
+            List<MovementTask> tasks = findMovementTasksForProcess(processInstanceId, userId);
 
-        for (MovementTask task : tasks) {
-            if (isLocationMatchingDestination(lat, lon, task.destinationId())) {
-                handleMovementCompletion(task, userId, participantId, lat, lon);
-                return MovementResponse.enteredArea(userId, task.destinationId(), task.processInstanceId());
+            for (MovementTask task : tasks) {
+                if (isLocationMatchingDestination(lat, lon, task.destinationId())) {
+                    handleMovementCompletion(task, userId, participantId, lat, lon);
+                    return MovementResponse.enteredArea(userId, task.destinationId(), task.processInstanceId());
+                }
             }
-        }
 
-        return MovementResponse.notInTargetArea(userId);
+            return MovementResponse.notInTargetArea(userId);
+        });
     }
 
     private void updateParticipantPosition(String participantId, double lat, double lon) {
         // Find which place (if any) contains this location
-        String currentPlace = environmentDataService.findPlaceContainingLocation(lat, lon)
+        String currentPlace = positionService.updatePosition(participantId, lat, lon)
                 .map(Place::getId)
                 .orElse(null);
 
-        positionService.updatePosition(participantId, lat, lon, currentPlace);
         log.trace("[GPS Service] Updated position for participant {} to ({}, {}) in place: {}",
                 participantId, lat, lon, currentPlace);
     }
@@ -392,19 +271,7 @@ public class GpsProcessingService {
     }
 
     private void signalTaskCompletion(MovementTask task) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                Thread.sleep(50);
-                runtimeService.signal(task.executionId());
-                log.info("[GPS Service] Successfully signaled task {} completion", task.taskId());
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("[GPS Service] Interrupted while signaling execution {}", task.executionId());
-            } catch (Exception e) {
-                log.error("[GPS Service] Failed to signal execution {} for task {}: {}",
-                        task.executionId(), task.taskId(), e.getMessage(), e);
-            }
-        }, executorService);
+        signalDispatcher.submit(task.executionId(), "movement " + task.taskId());
     }
 
     public boolean hasActiveMovementTasks(String userId) {
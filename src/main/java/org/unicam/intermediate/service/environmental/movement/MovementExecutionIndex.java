@@ -0,0 +1,163 @@
+package org.unicam.intermediate.service.environmental.movement;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.repository.ProcessDefinition;
+import org.camunda.bpm.engine.runtime.Execution;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.unicam.intermediate.models.enums.TaskType;
+import org.unicam.intermediate.service.ProcessMetadataCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Movement tasks currently waiting for GPS, by business key and participant.
+ *
+ * Kept up to date by {@code MovementExecutionListener} (start/end of the task) and rebuilt from
+ * the engine at startup, so a location update finds the destinations to test without querying
+ * process instances, executions, activities and variables one by one.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class MovementExecutionIndex {
+
+    private final RuntimeService runtimeService;
+    private final MovementService movementService;
+    private final ProcessMetadataCache processMetadataCache;
+
+    public record WaitingMovement(String executionId, String processInstanceId, String activityId,
+                                  String businessKey, String participantId, String destinationId) {
+    }
+
+    // Participant null = could not be resolved, the movement is offered to every participant of the business key
+    private record Key(String businessKey, String participantId) {
+    }
+
+    private final Map<Key, List<WaitingMovement>> byParticipant = new ConcurrentHashMap<>();
+    private final Map<String, WaitingMovement> byExecution = new ConcurrentHashMap<>();
+
+    public void register(WaitingMovement movement) {
+        if (movement.businessKey() == null || movement.destinationId() == null) {
+            log.debug("[MovementIndex] Not indexing movement {} without business key or destination", movement);
+            return;
+        }
+        WaitingMovement previous = byExecution.put(movement.executionId(), movement);
+        if (previous != null) {
+            removeFromKey(previous);
+        }
+        byParticipant.compute(keyOf(movement), (key, movements) -> {
+            List<WaitingMovement> updated = movements != null ? new ArrayList<>(movements) : new ArrayList<>(1);
+            updated.add(movement);
+            return List.copyOf(updated);
+        });
+        log.debug("[MovementIndex] {} of {} in BK {} waiting for {}", movement.activityId(),
+                movement.participantId(), movement.businessKey(), movement.destinationId());
+    }
+
+    public void unregister(String executionId) {
+        WaitingMovement removed = byExecution.remove(executionId);
+        if (removed != null) {
+            removeFromKey(removed);
+        }
+    }
+
+    /**
+     * Removes the movement before signaling it; false if another thread already took it
+     */
+    public boolean claim(WaitingMovement movement) {
+        if (!byExecution.remove(movement.executionId(), movement)) {
+            return false;
+        }
+        removeFromKey(movement);
+        return true;
+    }
+
+    public List<WaitingMovement> waitingMovements(String businessKey, String participantId) {
+        if (businessKey == null) {
+            return List.of();
+        }
+        List<WaitingMovement> own = participantId != null
+                ? byParticipant.getOrDefault(new Key(businessKey, participantId), List.of())
+                : List.of();
+        List<WaitingMovement> unassigned = byParticipant.getOrDefault(new Key(businessKey, null), List.of());
+        if (unassigned.isEmpty()) {
+            return own;
+        }
+        List<WaitingMovement> all = new ArrayList<>(own.size() + unassigned.size());
+        all.addAll(own);
+        all.addAll(unassigned);
+        return all;
+    }
+
+    public int size() {
+        return byExecution.size();
+    }
+
+    /**
+     * Re-reads the waiting movement tasks from the engine, for the instances started before this node
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        int found = 0;
+        Map<String, String> businessKeys = new HashMap<>();
+
+        try {
+            for (ProcessDefinition definition : movementService.getActiveProcessDefinitionsWithMovementTasks()) {
+                ProcessMetadataCache.ProcessMetadata metadata = processMetadataCache.get(definition);
+                for (String activityId : movementService.getTasksOfType(definition, TaskType.MOVEMENT)) {
+                    List<Execution> executions = runtimeService.createExecutionQuery()
+                            .processDefinitionId(definition.getId())
+                            .activityId(activityId)
+                            .active()
+                            .list();
+
+                    for (Execution execution : executions) {
+                        Object destination = runtimeService.getVariable(execution.getId(), activityId + ".destination");
+                        String businessKey = businessKeys.computeIfAbsent(execution.getProcessInstanceId(), this::businessKeyOf);
+                        if (destination == null || businessKey == null) {
+                            continue;
+                        }
+                        // Same participant the listener resolves from the process key; null offers it to the whole business key
+                        String participantId = metadata.participantId() != null
+                                ? metadata.participantId()
+                                : metadata.participantOfActivity(activityId);
+                        register(new WaitingMovement(execution.getId(), execution.getProcessInstanceId(), activityId,
+                                businessKey, participantId, destination.toString()));
+                        found++;
+                    }
+                }
+            }
+            log.info("[MovementIndex] Rebuilt from engine: {} movement tasks waiting for GPS", found);
+        } catch (Exception e) {
+            log.error("[MovementIndex] Failed to rebuild from engine: {}", e.getMessage(), e);
+        }
+    }
+
+    private String businessKeyOf(String processInstanceId) {
+        ProcessInstance instance = runtimeService.createProcessInstanceQuery()
+                .processInstanceId(processInstanceId)
+                .singleResult();
+        return instance != null ? instance.getBusinessKey() : null;
+    }
+
+    private void removeFromKey(WaitingMovement movement) {
+        byParticipant.computeIfPresent(keyOf(movement), (key, movements) -> {
+            List<WaitingMovement> updated = new ArrayList<>(movements);
+            updated.remove(movement);
+            return updated.isEmpty() ? null : List.copyOf(updated);
+        });
+    }
+
+    private static Key keyOf(WaitingMovement movement) {
+        return new Key(movement.businessKey(), movement.participantId());
+    }
+}
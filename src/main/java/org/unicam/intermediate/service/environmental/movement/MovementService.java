@@ -2,21 +2,15 @@ package org.unicam.intermediate.service.environmental.movement;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.camunda.bpm.engine.IdentityService;
 import org.camunda.bpm.engine.RepositoryService;
 import org.camunda.bpm.engine.RuntimeService;
-import org.camunda.bpm.engine.identity.Group;
 import org.camunda.bpm.engine.repository.ProcessDefinition;
 import org.camunda.bpm.engine.runtime.Execution;
-import org.camunda.bpm.model.bpmn.BpmnModelInstance;
-import org.camunda.bpm.model.bpmn.instance.ExtensionElements;
-import org.camunda.bpm.model.bpmn.instance.Task;
-import org.camunda.bpm.model.bpmn.instance.UserTask;
-import org.camunda.bpm.model.xml.instance.ModelElementInstance;
 import org.springframework.stereotype.Service;
 import org.unicam.intermediate.models.enums.TaskType;
+import org.unicam.intermediate.service.ProcessMetadataCache;
+import org.unicam.intermediate.service.TaskAuthorizationService;
 import org.unicam.intermediate.service.TaskTypeRegistry;
-import org.unicam.intermediate.utils.Constants;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -31,23 +25,20 @@ public class MovementService {
 
     private final RepositoryService repositoryService;
     private final RuntimeService runtimeService;
-    private final IdentityService identityService;
+    private final TaskAuthorizationService taskAuthorizationService;
     private final TaskTypeRegistry taskTypeRegistry;
+    private final ProcessMetadataCache processMetadataCache;
 
     /**
      * Checks if a process definition has any tasks with the specified space:type
      */
     public boolean hasTasksOfType(ProcessDefinition definition, TaskType taskType) {
-        BpmnModelInstance instance = repositoryService.getBpmnModelInstance(definition.getId());
-
-        return instance
-                .getModelElementsByType(Task.class)
-                .stream()
-                .anyMatch(task -> hasSpaceTypeValue(task, taskType));
+        return processMetadataCache.get(definition).hasTasksOfType(taskType);
     }
 
 
     public List<ProcessDefinition> getActiveProcessDefinitionsWithMovementTasks() {
+        // The query stays uncached so that suspended definitions drop out immediately
         return repositoryService
                 .createProcessDefinitionQuery()
                 .active()
@@ -61,25 +52,18 @@ public class MovementService {
      * Gets all task IDs that have the specified space:type
      */
     public List<String> getTasksOfType(ProcessDefinition definition, TaskType taskType) {
-        BpmnModelInstance model = repositoryService.getBpmnModelInstance(definition.getId());
-
-        return model.getModelElementsByType(Task.class).stream()
-                .filter(task -> hasSpaceTypeValue(task, taskType))
-                .map(Task::getId)
-                .collect(Collectors.toList());
+        return processMetadataCache.get(definition).taskIdsOfType(taskType);
     }
 
     /**
      * Gets all tasks of any registered type from the registry
      */
     public List<String> getAllDynamicTasks(ProcessDefinition definition) {
-        BpmnModelInstance model = repositoryService.getBpmnModelInstance(definition.getId());
         List<String> dynamicTasks = new ArrayList<>();
 
-        for (Task task : model.getModelElementsByType(Task.class)) {
-            String spaceType = extractSpaceTypeValue(task);
-            if (spaceType != null && taskTypeRegistry.isRegisteredTaskType(spaceType)) {
-                dynamicTasks.add(task.getId());
+        for (ProcessMetadataCache.DynamicTask task : processMetadataCache.get(definition).tasks().values()) {
+            if (task.spaceType() != null && taskTypeRegistry.isRegisteredTaskType(task.spaceType())) {
+                dynamicTasks.add(task.id());
             }
         }
 
@@ -130,35 +114,17 @@ public class MovementService {
         return executions;
     }
 
-    private boolean hasSpaceTypeValue(Task task, TaskType expectedType) {
-        String actualType = extractSpaceTypeValue(task);
-        return expectedType.toString().equals(actualType);
-    }
-
-    private String extractSpaceTypeValue(Task task) {
-        ExtensionElements ext = task.getExtensionElements();
-        if (ext == null) return null;
-        
-        return ext.getDomElement().getChildElements().stream()
-                .filter(dom -> "type".equals(dom.getLocalName()) 
-                        && Constants.SPACE_NS.getNamespaceUri().equals(dom.getNamespaceURI()))
-                .map(dom -> dom.getTextContent().trim())
-                .findFirst()
-                .orElse(null);
-    }
-
     private boolean isUserAuthorizedOnTask(String processDefinitionId,
                                            String taskId,
                                            String userId) {
 
-        BpmnModelInstance model = repositoryService.getBpmnModelInstance(processDefinitionId);
-        ModelElementInstance elem = model.getModelElementById(taskId);
-        if (!(elem instanceof UserTask userTask)) {
+        ProcessMetadataCache.DynamicTask task = processMetadataCache.get(processDefinitionId).task(taskId);
+        if (task == null) {
             return true;
         }
 
         // Check candidateUsers
-        String users = userTask.getCamundaCandidateUsers();
+        String users = task.candidateUsers();
         if (users != null && !users.isBlank()) {
             return Arrays.stream(users.split(","))
                     .map(String::trim)
@@ -166,13 +132,9 @@ public class MovementService {
         }
 
         // Check candidateGroups
-        String groups = userTask.getCamundaCandidateGroups();
+        String groups = task.candidateGroups();
         if (groups != null && !groups.isBlank()) {
-            Set<String> userGroups = identityService.createGroupQuery()
-                    .groupMember(userId)
-                    .list().stream()
-                    .map(Group::getId)
-                    .collect(Collectors.toSet());
+            Set<String> userGroups = taskAuthorizationService.getUserGroupIds(userId);
             return Arrays.stream(groups.split(","))
                     .map(String::trim)
                     .anyMatch(userGroups::contains);
@@ -1,26 +1,142 @@
 package org.unicam.intermediate.service.participant;
 
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.unicam.intermediate.models.environmental.Coordinate;
+import org.unicam.intermediate.models.pojo.Place;
+import org.unicam.intermediate.models.record.PlaceChange;
+import org.unicam.intermediate.models.record.PositionSample;
+import org.unicam.intermediate.service.environmental.EnvironmentDataService;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Last position and recent history of every participant. Both are dropped together when the business
+ * key of the participant ends ({@link UserParticipantMappingService}) or when it sent nothing for
+ * {@code participant.position.idle-eviction-minutes}, so memory follows the live participants.
+ */
 @Service
 @Slf4j
 public class ParticipantPositionService {
 
+    private final EnvironmentDataService environmentDataService;
+    // Samples kept per participant for trajectories and dwell times (0 = no history)
+    private final int historyCapacity;
+    private final long idleEvictionMillis;
+    private final ScheduledExecutorService evictor;
+
     private final Map<String, Coordinate> positions = new ConcurrentHashMap<>();
+    private final Map<String, PositionHistory> histories = new ConcurrentHashMap<>();
+    // Server time of the last update, for idle eviction: sample timestamps of replayed traffic can be old
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+
+    public ParticipantPositionService(EnvironmentDataService environmentDataService,
+                                      @Value("${participant.history.capacity:64}") int historyCapacity,
+                                      @Value("${participant.position.idle-eviction-minutes:60}") long idleEvictionMinutes) {
+        this.environmentDataService = environmentDataService;
+        this.historyCapacity = historyCapacity;
+        this.idleEvictionMillis = TimeUnit.MINUTES.toMillis(Math.max(0, idleEvictionMinutes));
+
+        if (idleEvictionMillis > 0) {
+            this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "position-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long checkEvery = Math.min(idleEvictionMillis / 4, TimeUnit.MINUTES.toMillis(1));
+            evictor.scheduleWithFixedDelay(this::evictIdle, checkEvery, checkEvery, TimeUnit.MILLISECONDS);
+        } else {
+            this.evictor = null;
+        }
+    }
 
     public void updatePosition(String participantId, double lat, double lon, String destination) {
-        positions.put(participantId, new Coordinate(lat, lon, destination));
+        store(participantId, lat, lon, System.currentTimeMillis(), destination);
+    }
+
+    /**
+     * Same as {@link #updatePosition(String, double, double, long)} for a sample taken now
+     */
+    public Optional<Place> updatePosition(String participantId, double lat, double lon) {
+        return updatePosition(participantId, lat, lon, System.currentTimeMillis());
+    }
+
+    /**
+     * Resolves the place containing the new position, starting from the participant's last place,
+     * and stores the position with that place as destination. {@code timestampMillis} is when the
+     * device took the sample, so batched and replayed samples keep their own time in the history.
+     */
+    public Optional<Place> updatePosition(String participantId, double lat, double lon, long timestampMillis) {
+        Coordinate previous = positions.get(participantId);
+        Optional<Place> place = environmentDataService.findPlaceContainingLocation(
+                lat, lon, previous != null ? previous.destination : null);
+
+        store(participantId, lat, lon, timestampMillis, place.map(Place::getId).orElse(null));
+        return place;
+    }
+
+    private void store(String participantId, double lat, double lon, long timestampMillis, String placeId) {
+        lastSeen.put(participantId, System.currentTimeMillis());
+        positions.put(participantId, new Coordinate(lat, lon, placeId, Instant.ofEpochMilli(timestampMillis)));
+        if (historyCapacity > 0) {
+            histories.computeIfAbsent(participantId, id -> new PositionHistory(historyCapacity))
+                    .record(lat, lon, timestampMillis, placeId);
+        }
+    }
+
+    /**
+     * Re-resolves every stored position against the current environment, e.g. after a reload
+     * changed some polygons, and returns the participants whose place changed
+     */
+    public List<PlaceChange> reconcilePlaces() {
+        List<PlaceChange> changes = new ArrayList<>();
+        positions.forEach((participantId, position) -> {
+            String placeId = environmentDataService
+                    .findPlaceContainingLocation(position.lat, position.lon, position.destination)
+                    .map(Place::getId)
+                    .orElse(null);
+            if (Objects.equals(placeId, position.destination)) {
+                return;
+            }
+            // Skip participants that sent a new sample meanwhile: it was resolved against the new environment
+            Coordinate reconciled = new Coordinate(position.lat, position.lon, placeId, position.timestamp);
+            if (positions.replace(participantId, position, reconciled)) {
+                changes.add(new PlaceChange(participantId, position.destination, placeId));
+            }
+        });
+
+        if (!changes.isEmpty()) {
+            log.info("[ParticipantPositionService] {} participants changed place after environment reload: {}",
+                    changes.size(), changes);
+        }
+        return changes;
     }
 
     public Coordinate getPosition(String participantId) {
         return positions.get(participantId);
     }
 
+    /**
+     * Place resolved for the last known position, null if unknown or outside every place
+     */
+    public String getPlaceId(String participantId) {
+        Coordinate position = positions.get(participantId);
+        return position != null ? position.destination : null;
+    }
+
 
     public String getDestination(String participantId) {
         var position = positions.get(participantId);
@@ -31,7 +147,80 @@ public class ParticipantPositionService {
         return Map.copyOf(positions);
     }
 
+    /**
+     * Up to the last {@code count} positions of the participant, oldest first
+     */
+    public List<PositionSample> getRecentPositions(String participantId, int count) {
+        PositionHistory history = histories.get(participantId);
+        return history != null ? history.last(count) : List.of();
+    }
+
+    /**
+     * Recorded positions of the participant between the two instants (inclusive), oldest first
+     */
+    public List<PositionSample> getPositionsBetween(String participantId, Instant from, Instant to) {
+        PositionHistory history = histories.get(participantId);
+        return history != null ? history.between(from.toEpochMilli(), to.toEpochMilli()) : List.of();
+    }
+
+    /**
+     * How long the participant has been in its current place according to the kept samples,
+     * null without history. Place changes from {@link #reconcilePlaces()} are not part of the history.
+     */
+    public Duration getDwellTime(String participantId) {
+        PositionHistory history = histories.get(participantId);
+        long entered = history != null ? history.enteredCurrentPlaceAt() : -1;
+        return entered >= 0 ? Duration.ofMillis(Math.max(0, System.currentTimeMillis() - entered)) : null;
+    }
+
+    public Map<String, Object> getHistoryStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("participants", histories.size());
+        stats.put("capacity", historyCapacity);
+        stats.put("samples", histories.values().stream().mapToLong(PositionHistory::size).sum());
+        stats.put("reservedBytes", (long) histories.size() * historyCapacity * PositionHistory.BYTES_PER_SAMPLE);
+        return stats;
+    }
+
+    /**
+     * Forgets the position and history of a participant that is not tracked anymore
+     */
+    public void evict(String participantId) {
+        positions.remove(participantId);
+        histories.remove(participantId);
+        lastSeen.remove(participantId);
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleEvictionMillis;
+        int[] evicted = new int[1];
+        positions.forEach((participantId, position) -> {
+            // Conditional remove: a sample arriving meanwhile keeps the participant
+            long seen = lastSeen.getOrDefault(participantId, position.timestamp.toEpochMilli());
+            if (seen < cutoff && positions.remove(participantId, position)) {
+                histories.remove(participantId);
+                evicted[0]++;
+            }
+        });
+        // Histories left behind by a sample recorded while its participant was being evicted
+        histories.keySet().removeIf(participantId -> !positions.containsKey(participantId));
+        lastSeen.keySet().removeIf(participantId -> !positions.containsKey(participantId));
+        if (evicted[0] > 0) {
+            log.info("[ParticipantPositionService] Evicted {} participants idle for more than {} min",
+                    evicted[0], TimeUnit.MILLISECONDS.toMinutes(idleEvictionMillis));
+        }
+    }
+
     public void clear() {
         positions.clear();
+        histories.clear();
+        lastSeen.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
     }
 }
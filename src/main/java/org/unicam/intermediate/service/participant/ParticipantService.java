@@ -4,15 +4,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.camunda.bpm.engine.RepositoryService;
 import org.camunda.bpm.engine.RuntimeService;
 import org.camunda.bpm.engine.delegate.DelegateExecution;
-import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.camunda.bpm.engine.runtime.VariableInstance;
 import org.camunda.bpm.engine.task.Task;
 import org.camunda.bpm.model.bpmn.BpmnModelInstance;
 import org.camunda.bpm.model.bpmn.instance.*;
 import org.camunda.bpm.model.bpmn.instance.Process;
-import org.camunda.bpm.model.xml.instance.ModelElementInstance;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import java.util.Collection;
+import org.unicam.intermediate.service.ProcessMetadataCache;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -27,6 +26,9 @@ public class ParticipantService {
     @Autowired
     private RuntimeService runtimeService;
 
+    @Autowired
+    private ProcessMetadataCache processMetadataCache;
+
     // Cache collaboration data per business key to avoid repeated BPMN parsing
     private final Map<String, CollaborationData> collaborationCache = new ConcurrentHashMap<>();
 
@@ -76,65 +78,89 @@ public class ParticipantService {
     }
 
     public String resolveParticipantForTask(Task task) {
+        return resolveParticipantsForTasks(List.of(task)).get(task.getId());
+    }
+
+    /**
+     * Resolves the participant of each task (task id -> participant id) with two queries for the whole list:
+     * the participantId process variables, then the activity -> participant table of {@link ProcessMetadataCache}
+     */
+    public Map<String, String> resolveParticipantsForTasks(Collection<Task> tasks) {
+        Map<String, String> result = new HashMap<>();
+        if (tasks.isEmpty()) {
+            return result;
+        }
+
+        Set<String> processInstanceIds = new HashSet<>();
+        for (Task task : tasks) {
+            if (task.getProcessInstanceId() != null) {
+                processInstanceIds.add(task.getProcessInstanceId());
+            }
+        }
+
+        Set<String> existingInstances = new HashSet<>();
+        Map<String, String> participantVariables = new HashMap<>();
         try {
-            // 1. Prima prova dalle variabili del processo
-            ProcessInstance pi = runtimeService.createProcessInstanceQuery()
-                    .processInstanceId(task.getProcessInstanceId())
-                    .singleResult();
+            if (!processInstanceIds.isEmpty()) {
+                String[] ids = processInstanceIds.toArray(String[]::new);
+                runtimeService.createProcessInstanceQuery()
+                        .processInstanceIds(processInstanceIds)
+                        .list()
+                        .forEach(pi -> existingInstances.add(pi.getId()));
+
+                // 1. Prima prova dalle variabili del processo (solo scope dell'istanza)
+                for (VariableInstance variable : runtimeService.createVariableInstanceQuery()
+                        .variableName("participantId")
+                        .processInstanceIdIn(ids)
+                        .list()) {
+                    if (variable.getValue() != null
+                            && variable.getProcessInstanceId().equals(variable.getExecutionId())) {
+                        participantVariables.put(variable.getProcessInstanceId(), variable.getValue().toString());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("[ParticipantService] Error loading process instances for {} tasks", tasks.size(), e);
+            tasks.forEach(task -> result.put(task.getId(), "Participant_Error"));
+            return result;
+        }
 
-            if (pi == null) {
+        for (Task task : tasks) {
+            result.put(task.getId(), resolveParticipantForTask(task, existingInstances, participantVariables));
+        }
+        return result;
+    }
+
+    private String resolveParticipantForTask(Task task, Set<String> existingInstances,
+                                             Map<String, String> participantVariables) {
+        try {
+            if (!existingInstances.contains(task.getProcessInstanceId())) {
                 log.warn("[ParticipantService] No process instance found for task {}", task.getId());
                 return "Participant_Unknown";
             }
 
-            // Check process variables first
-            Object participantId = runtimeService.getVariable(pi.getId(), "participantId");
+            String participantId = participantVariables.get(task.getProcessInstanceId());
             if (participantId != null) {
                 log.debug("[ParticipantService] Found participantId in variables: {}", participantId);
-                return participantId.toString();
+                return participantId;
             }
 
-            // 2. Ottieni il modello BPMN
-            BpmnModelInstance model = repositoryService.getBpmnModelInstance(task.getProcessDefinitionId());
-
-            // 3. Trova il task nel modello
-            ModelElementInstance taskElement = model.getModelElementById(task.getTaskDefinitionKey());
-            if (taskElement == null) {
+            // 2. Participant del processo che contiene il task, precalcolato per definition
+            ProcessMetadataCache.ProcessMetadata metadata = processMetadataCache.get(task.getProcessDefinitionId());
+            if (!metadata.hasActivity(task.getTaskDefinitionKey())) {
                 log.warn("[ParticipantService] Task element {} not found in BPMN", task.getTaskDefinitionKey());
                 return "Participant_Default";
             }
 
-            // 4. Risali al processo che contiene questo task
-            if (taskElement instanceof FlowNode) {
-                FlowNode flowNode = (FlowNode) taskElement;
-
-                // Ottieni il subprocess o processo padre
-                BaseElement container = (BaseElement) flowNode.getParentElement();
-                while (container != null && !(container instanceof Process)) {
-                    container = (BaseElement) container.getParentElement();
-                }
-
-                if (container instanceof Process) {
-                    Process process = (Process) container;
-
-                    // 5. Trova il participant che referenzia questo processo
-                    Collection<Participant> participants = model.getModelElementsByType(Participant.class);
-                    for (Participant participant : participants) {
-                        if (participant.getProcess() != null &&
-                                participant.getProcess().getId().equals(process.getId())) {
-
-                            log.info("[ParticipantService] Resolved participant {} for task {} in process {}",
-                                    participant.getId(), task.getTaskDefinitionKey(), process.getId());
-
-                            return participant.getId();
-                        }
-                    }
-                }
+            participantId = metadata.participantOfActivity(task.getTaskDefinitionKey());
+            if (participantId != null) {
+                log.debug("[ParticipantService] Resolved participant {} for task {}",
+                        participantId, task.getTaskDefinitionKey());
+                return participantId;
             }
 
-            // 6. Se siamo in un processo senza collaboration, usa un default basato sul processo
-            String processKey = repositoryService.getProcessDefinition(task.getProcessDefinitionId()).getKey();
-            String defaultParticipant = "Participant_" + processKey;
+            // 3. Se siamo in un processo senza collaboration, usa un default basato sul processo
+            String defaultParticipant = "Participant_" + metadata.processDefinitionKey();
 
             log.info("[ParticipantService] No participant found in model, using default: {}", defaultParticipant);
             return defaultParticipant;
@@ -187,11 +213,9 @@ public class ParticipantService {
 
     public String getParticipantName(String processDefinitionId, String participantId) {
         try {
-            BpmnModelInstance model = repositoryService.getBpmnModelInstance(processDefinitionId);
-            Participant participant = model.getModelElementById(participantId);
-
-            if (participant != null && participant.getName() != null) {
-                return participant.getName();
+            String name = processMetadataCache.get(processDefinitionId).participantNames().get(participantId);
+            if (name != null) {
+                return name;
             }
         } catch (Exception e) {
             log.debug("[ParticipantService] Error getting participant name", e);
@@ -0,0 +1,108 @@
+package org.unicam.intermediate.service.participant;
+
+import org.unicam.intermediate.models.record.PositionSample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Last {@code capacity} positions of one participant in a ring of primitive arrays.
+ *
+ * The arrays are allocated once with the first sample, so recording a position allocates nothing and
+ * a participant costs a fixed {@link #BYTES_PER_SAMPLE} bytes per slot whatever its update rate.
+ * Place ids are references to the ids of the environment, not copies.
+ */
+final class PositionHistory {
+
+    // lat + lon + timestamp + place reference (compressed oops)
+    static final int BYTES_PER_SAMPLE = Double.BYTES * 2 + Long.BYTES + Integer.BYTES;
+
+    private final double[] lats;
+    private final double[] lons;
+    private final long[] timestamps;
+    private final String[] placeIds;
+    private int next;
+    private int size;
+
+    PositionHistory(int capacity) {
+        this.lats = new double[capacity];
+        this.lons = new double[capacity];
+        this.timestamps = new long[capacity];
+        this.placeIds = new String[capacity];
+    }
+
+    synchronized void record(double lat, double lon, long timestampMillis, String placeId) {
+        lats[next] = lat;
+        lons[next] = lon;
+        timestamps[next] = timestampMillis;
+        placeIds[next] = placeId;
+        next = (next + 1) % lats.length;
+        if (size < lats.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Up to {@code count} most recent samples, oldest first
+     */
+    synchronized List<PositionSample> last(int count) {
+        int n = Math.min(Math.max(count, 0), size);
+        List<PositionSample> samples = new ArrayList<>(n);
+        for (int i = n; i > 0; i--) {
+            samples.add(sample(slot(i)));
+        }
+        return samples;
+    }
+
+    /**
+     * Samples with {@code from <= timestamp <= to}, oldest first
+     */
+    synchronized List<PositionSample> between(long fromMillis, long toMillis) {
+        List<PositionSample> samples = new ArrayList<>();
+        for (int i = size; i > 0; i--) {
+            int slot = slot(i);
+            if (timestamps[slot] >= fromMillis && timestamps[slot] <= toMillis) {
+                samples.add(sample(slot));
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Timestamp of the oldest consecutive recent sample in the current place, -1 if none is recorded.
+     * Bounded by the capacity: a participant that stayed longer reports the oldest sample kept.
+     */
+    synchronized long enteredCurrentPlaceAt() {
+        if (size == 0) {
+            return -1;
+        }
+        String current = placeIds[slot(1)];
+        long entered = timestamps[slot(1)];
+        for (int i = 2; i <= size; i++) {
+            int slot = slot(i);
+            if (!Objects.equals(placeIds[slot], current)) {
+                break;
+            }
+            entered = timestamps[slot];
+        }
+        return entered;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    int capacity() {
+        return lats.length;
+    }
+
+    // i-th most recent sample, 1 = newest
+    private int slot(int i) {
+        return Math.floorMod(next - i, lats.length);
+    }
+
+    private PositionSample sample(int slot) {
+        return new PositionSample(lats[slot], lons[slot], timestamps[slot], placeIds[slot]);
+    }
+}
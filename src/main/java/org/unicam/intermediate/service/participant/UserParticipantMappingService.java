@@ -4,44 +4,61 @@ package org.unicam.intermediate.service.participant;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.camunda.bpm.engine.IdentityService;
 import org.camunda.bpm.engine.RepositoryService;
 import org.camunda.bpm.engine.RuntimeService;
 import org.camunda.bpm.engine.TaskService;
-import org.camunda.bpm.engine.identity.Group;
 import org.camunda.bpm.engine.runtime.ProcessInstance;
 import org.camunda.bpm.engine.task.Task;
 import org.camunda.bpm.model.bpmn.BpmnModelInstance;
 import org.camunda.bpm.model.bpmn.instance.Participant;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.unicam.intermediate.service.TaskAuthorizationService;
 import org.unicam.intermediate.service.task.TaskTrackingService;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @Slf4j
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class UserParticipantMappingService {
 
         private final RuntimeService runtimeService;
         private final RepositoryService repositoryService;
         private final TaskService taskService;
-        private final IdentityService identityService;
         private final ParticipantService participantService;
         private final TaskAuthorizationService taskAuthorizationService;
+        private final ParticipantPositionService positionService;
 
-        // businessKey -> userId -> participantId
-        private final Map<String, Map<String, String>> mappings = new ConcurrentHashMap<>();
+        // businessKey -> userId <-> participantId, evicted when the last instance of the business key ends
+        private final MappingStore mappings = new MappingStore();
 
         // userId -> active tracking context
         private final Map<String, UserParticipantMappingService.TrackingContext> activeTracking = new ConcurrentHashMap<>();
 
+        @Value("${participant.discovery.negative-ttl-ms:5000}")
+        private long negativeTtlMs;
+
+        // businessKey -> userId -> until when a failed discovery is not retried
+        private final Map<String, Map<String, Long>> undiscovered = new ConcurrentHashMap<>();
+        private final Map<DiscoveryKey, CompletableFuture<ParticipantDiscoveryResult>> discoveriesInFlight = new ConcurrentHashMap<>();
+        // Bumped by every invalidation: a discovery that overlapped one does not cache its negative result
+        private final AtomicLong discoveryInvalidations = new AtomicLong();
+
+        private record DiscoveryKey(String businessKey, String userId) {
+        }
+
         /**
-         * Auto-discover and register the appropriate participant for a user
+         * Auto-discover and register the appropriate participant for a user.
+         * Concurrent calls for the same user and business key share one discovery, and a discovery
+         * that found nothing is not repeated for {@code participant.discovery.negative-ttl-ms} unless
+         * a task of the business key is created or assigned in the meantime.
          */
         public ParticipantDiscoveryResult autoDiscoverAndRegister(String userId, String businessKey) {
             try {
@@ -52,33 +69,38 @@ public class UserParticipantMappingService {
                     return new ParticipantDiscoveryResult(existingParticipantId, name, false);
                 }
 
-                // Find active process instances
-                List<ProcessInstance> instances = runtimeService.createProcessInstanceQuery()
-                        .processInstanceBusinessKey(businessKey)
-                        .active()
-                        .list();
-
-                if (instances.isEmpty()) {
-                    log.debug("[UserMapping] No active processes for businessKey: {}", businessKey);
+                if (isRecentlyUndiscovered(businessKey, userId)) {
+                    log.debug("[UserMapping] Skipping discovery for user {} in BK {}: nothing found recently",
+                            userId, businessKey);
                     return null;
                 }
 
-                // Collect participant states
-                Map<String, ParticipantInfo> participantStates = analyzeParticipants(instances);
-
-                // Find best match for user
-                ParticipantDiscoveryResult result = findBestParticipantForUser(
-                        userId, businessKey, participantStates);
-
-                if (result != null) {
-                    // Register the mapping
-                    registerUserAsParticipant(businessKey, userId, result.participantId);
-                    log.info("[UserMapping] Auto-registered user {} as participant {} for BK {}",
-                            userId, result.participantId, businessKey);
-                    result.newlyRegistered = true;
+                DiscoveryKey key = new DiscoveryKey(businessKey, userId);
+                CompletableFuture<ParticipantDiscoveryResult> mine = new CompletableFuture<>();
+                CompletableFuture<ParticipantDiscoveryResult> running = discoveriesInFlight.putIfAbsent(key, mine);
+                if (running != null) {
+                    // Another sample of the same user is already discovering: share its result
+                    ParticipantDiscoveryResult shared = running.join();
+                    return shared != null
+                            ? new ParticipantDiscoveryResult(shared.participantId, shared.participantName, false)
+                            : null;
                 }
 
-                return result;
+                try {
+                    long generation = discoveryInvalidations.get();
+                    ParticipantDiscoveryResult result = discover(userId, businessKey);
+                    if (result == null && generation == discoveryInvalidations.get()) {
+                        undiscovered.computeIfAbsent(businessKey, k -> new ConcurrentHashMap<>())
+                                .put(userId, System.currentTimeMillis() + negativeTtlMs);
+                    }
+                    mine.complete(result);
+                    return result;
+                } catch (RuntimeException e) {
+                    mine.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    discoveriesInFlight.remove(key, mine);
+                }
 
             } catch (Exception e) {
                 log.error("[UserMapping] Error during auto-discovery for user {}", userId, e);
@@ -86,12 +108,67 @@ public class UserParticipantMappingService {
             }
         }
 
+        /**
+         * Forgets the negative discovery results of a business key, e.g. when one of its tasks
+         * is created or assigned
+         */
+        public void invalidateDiscovery(String businessKey) {
+            discoveryInvalidations.incrementAndGet();
+            if (businessKey != null) {
+                undiscovered.remove(businessKey);
+            }
+        }
+
+        private boolean isRecentlyUndiscovered(String businessKey, String userId) {
+            Map<String, Long> users = undiscovered.get(businessKey);
+            Long expiresAt = users != null ? users.get(userId) : null;
+            if (expiresAt == null) {
+                return false;
+            }
+            if (expiresAt > System.currentTimeMillis()) {
+                return true;
+            }
+            users.remove(userId, expiresAt);
+            return false;
+        }
+
+        private ParticipantDiscoveryResult discover(String userId, String businessKey) {
+            // Find active process instances
+            List<ProcessInstance> instances = runtimeService.createProcessInstanceQuery()
+                    .processInstanceBusinessKey(businessKey)
+                    .active()
+                    .list();
+
+            if (instances.isEmpty()) {
+                log.debug("[UserMapping] No active processes for businessKey: {}", businessKey);
+                return null;
+            }
+
+            // Collect participant states
+            Map<String, ParticipantInfo> participantStates = analyzeParticipants(instances);
+
+            // Find best match for user
+            ParticipantDiscoveryResult result = findBestParticipantForUser(
+                    userId, businessKey, participantStates);
+
+            if (result != null) {
+                // Register the mapping
+                registerUserAsParticipant(businessKey, userId, result.participantId);
+                log.info("[UserMapping] Auto-registered user {} as participant {} for BK {}",
+                        userId, result.participantId, businessKey);
+                result.newlyRegistered = true;
+            }
+
+            return result;
+        }
+
         private Map<String, ParticipantInfo> analyzeParticipants(List<ProcessInstance> instances) {
             Map<String, ParticipantInfo> participantStates = new HashMap<>();
 
             for (ProcessInstance pi : instances) {
                 BpmnModelInstance model = repositoryService.getBpmnModelInstance(pi.getProcessDefinitionId());
                 Collection<Participant> participants = model.getModelElementsByType(Participant.class);
+                Map<String, List<Task>> tasksByParticipant = findTasksByParticipant(pi.getId());
 
                 for (Participant p : participants) {
                     if (p.getProcess() != null) {
@@ -102,8 +179,7 @@ public class UserParticipantMappingService {
                                 k -> new ParticipantInfo(pId, pName));
 
                         // Find active tasks for this participant
-                        List<Task> activeTasks = findTasksForParticipant(pi.getId(), pId);
-                        info.activeTasks.addAll(activeTasks);
+                        info.activeTasks.addAll(tasksByParticipant.getOrDefault(pId, List.of()));
 
                         // Check if already claimed
                         String existingUser = getUserForParticipant(pi.getBusinessKey(), pId);
@@ -117,19 +193,17 @@ public class UserParticipantMappingService {
             return participantStates;
         }
 
-        private List<Task> findTasksForParticipant(String processInstanceId, String participantId) {
-            List<Task> result = new ArrayList<>();
+        private Map<String, List<Task>> findTasksByParticipant(String processInstanceId) {
+            Map<String, List<Task>> result = new HashMap<>();
 
             List<Task> allTasks = taskService.createTaskQuery()
                     .processInstanceId(processInstanceId)
                     .active()
                     .list();
 
+            Map<String, String> participantByTask = participantService.resolveParticipantsForTasks(allTasks);
             for (Task task : allTasks) {
-                String taskParticipantId = participantService.resolveParticipantForTask(task);
-                if (participantId.equals(taskParticipantId)) {
-                    result.add(task);
-                }
+                result.computeIfAbsent(participantByTask.get(task.getId()), k -> new ArrayList<>()).add(task);
             }
 
             return result;
@@ -150,10 +224,20 @@ public class UserParticipantMappingService {
             }
 
             // 2. Unclaimed participant with accessible tasks
+            List<Task> unclaimedTasks = new ArrayList<>();
+            for (ParticipantInfo info : participantStates.values()) {
+                if (info.claimedByUser == null) {
+                    unclaimedTasks.addAll(info.activeTasks);
+                }
+            }
+            Set<String> accessibleTaskIds = new HashSet<>();
+            taskAuthorizationService.filterAccessibleTasks(userId, unclaimedTasks)
+                    .forEach(task -> accessibleTaskIds.add(task.getId()));
+
             for (ParticipantInfo info : participantStates.values()) {
                 if (info.claimedByUser == null) {
                     for (Task task : info.activeTasks) {
-                        if (taskAuthorizationService.canUserAccessTask(userId, task)) {
+                        if (accessibleTaskIds.contains(task.getId())) {
                             log.info("[UserMapping] Found unclaimed participant {} accessible to user {}",
                                     info.participantId, userId);
                             return new ParticipantDiscoveryResult(info.participantId, info.participantName, false);
@@ -163,19 +247,17 @@ public class UserParticipantMappingService {
             }
 
             // 3. Match based on user groups
-            List<Group> userGroups = identityService.createGroupQuery()
-                    .groupMember(userId)
-                    .list();
+            Set<String> userGroupIds = taskAuthorizationService.getUserGroupIds(userId);
 
             for (ParticipantInfo info : participantStates.values()) {
                 if (info.claimedByUser == null) {
-                    for (Group group : userGroups) {
-                        String groupId = group.getId().toLowerCase();
+                    for (String userGroupId : userGroupIds) {
+                        String groupId = userGroupId.toLowerCase();
                         String pName = info.participantName.toLowerCase();
 
                         if (pName.contains(groupId) || groupId.contains(pName)) {
                             log.info("[UserMapping] Matched participant {} to user {} via group {}",
-                                    info.participantId, userId, group.getId());
+                                    info.participantId, userId, userGroupId);
                             return new ParticipantDiscoveryResult(info.participantId, info.participantName, false);
                         }
                     }
@@ -198,15 +280,7 @@ public class UserParticipantMappingService {
          * Get user that claimed a participant
          */
         public String getUserForParticipant(String businessKey, String participantId) {
-            Map<String, String> businessKeyMappings = mappings.get(businessKey);
-            if (businessKeyMappings != null) {
-                for (Map.Entry<String, String> entry : businessKeyMappings.entrySet()) {
-                    if (participantId.equals(entry.getValue())) {
-                        return entry.getKey();
-                    }
-                }
-            }
-            return null;
+            return mappings.userFor(businessKey, participantId);
         }
 
         private String getParticipantNameFromProcess(String businessKey, String participantId) {
@@ -251,8 +325,7 @@ public class UserParticipantMappingService {
          * Registra quale participant un user sta impersonando per un dato businessKey
          */
         public void registerUserAsParticipant(String businessKey, String userId, String participantId) {
-            mappings.computeIfAbsent(businessKey, k -> new ConcurrentHashMap<>())
-                    .put(userId, participantId);
+            mappings.put(businessKey, userId, participantId);
 
             log.info("[UserMapping] Registered user {} as participant {} for businessKey {}",
                     userId, participantId, businessKey);
@@ -301,12 +374,35 @@ public class UserParticipantMappingService {
             }
 
             // Poi controlla i mapping salvati
-            Map<String, String> businessKeyMappings = mappings.get(businessKey);
-            if (businessKeyMappings != null) {
-                return businessKeyMappings.get(userId);
+            return mappings.participantFor(businessKey, userId);
+        }
+
+        /**
+         * Drops mappings and tracking of a business key whose process instances have all ended
+         */
+        public void evictBusinessKey(String businessKey) {
+            Set<String> participants = new HashSet<>(mappings.remove(businessKey));
+            undiscovered.remove(businessKey);
+            activeTracking.values().removeIf(context -> {
+                if (!businessKey.equals(context.getBusinessKey())) {
+                    return false;
+                }
+                participants.add(context.getParticipantId());
+                return true;
+            });
+
+            // Participant ids are not scoped by business key: keep the ones still used by another one
+            for (String participantId : participants) {
+                if (participantId != null && !mappings.mapsParticipant(participantId)
+                        && activeTracking.values().stream().noneMatch(context -> participantId.equals(context.getParticipantId()))) {
+                    positionService.evict(participantId);
+                }
             }
 
-            return null;
+            if (!participants.isEmpty()) {
+                log.info("[UserMapping] Evicted mappings and positions of {} participants of ended businessKey {}",
+                        participants.size(), businessKey);
+            }
         }
 
         @Data
@@ -320,4 +416,62 @@ public class UserParticipantMappingService {
             private Instant startedAt;
         }
 
+        /**
+         * User <-> participant mappings per business key, with O(1) lookups in both directions.
+         * Each business key holds an immutable pair of maps replaced inside {@link ConcurrentHashMap#compute}.
+         */
+        private static final class MappingStore {
+
+            private record Mappings(Map<String, String> participantByUser, Map<String, String> userByParticipant) {
+            }
+
+            private final Map<String, Mappings> byBusinessKey = new ConcurrentHashMap<>();
+
+            void put(String businessKey, String userId, String participantId) {
+                byBusinessKey.compute(businessKey, (key, current) -> {
+                    Map<String, String> participantByUser = current != null
+                            ? new HashMap<>(current.participantByUser()) : new HashMap<>();
+                    Map<String, String> userByParticipant = current != null
+                            ? new HashMap<>(current.userByParticipant()) : new HashMap<>();
+
+                    String previousParticipant = participantByUser.put(userId, participantId);
+                    if (previousParticipant != null && !previousParticipant.equals(participantId)
+                            && userId.equals(userByParticipant.get(previousParticipant))) {
+                        // The user left its previous participant: keep it claimed if another user still maps to it
+                        userByParticipant.remove(previousParticipant);
+                        participantByUser.forEach((user, participant) -> {
+                            if (participant.equals(previousParticipant)) {
+                                userByParticipant.putIfAbsent(previousParticipant, user);
+                            }
+                        });
+                    }
+                    userByParticipant.put(participantId, userId);
+                    return new Mappings(Map.copyOf(participantByUser), Map.copyOf(userByParticipant));
+                });
+            }
+
+            String participantFor(String businessKey, String userId) {
+                Mappings current = businessKey != null ? byBusinessKey.get(businessKey) : null;
+                return current != null ? current.participantByUser().get(userId) : null;
+            }
+
+            String userFor(String businessKey, String participantId) {
+                Mappings current = businessKey != null ? byBusinessKey.get(businessKey) : null;
+                return current != null ? current.userByParticipant().get(participantId) : null;
+            }
+
+            /**
+             * Removes the business key and returns the participants it mapped
+             */
+            Set<String> remove(String businessKey) {
+                Mappings removed = byBusinessKey.remove(businessKey);
+                return removed != null ? Set.copyOf(removed.participantByUser().values()) : Set.of();
+            }
+
+            boolean mapsParticipant(String participantId) {
+                return byBusinessKey.values().stream()
+                        .anyMatch(current -> current.userByParticipant().containsKey(participantId));
+            }
+        }
+
 }
\ No newline at end of file
@@ -5,24 +5,24 @@ package org.unicam.intermediate.service.task;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.camunda.bpm.engine.IdentityService;
-import org.camunda.bpm.engine.RepositoryService;
 import org.camunda.bpm.engine.RuntimeService;
 import org.camunda.bpm.engine.TaskService;
 import org.camunda.bpm.engine.identity.Group;
 import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.camunda.bpm.engine.runtime.VariableInstance;
 import org.camunda.bpm.engine.task.Task;
-import org.camunda.bpm.model.bpmn.BpmnModelInstance;
-import org.camunda.bpm.model.bpmn.instance.ExtensionElements;
-import org.camunda.bpm.model.bpmn.instance.FlowNode;
-import org.camunda.bpm.model.xml.instance.ModelElementInstance;
 import org.springframework.stereotype.Service;
+import org.unicam.intermediate.service.ProcessMetadataCache;
 import org.unicam.intermediate.service.TaskAuthorizationService;
 import org.unicam.intermediate.service.participant.ParticipantService;
 import org.unicam.intermediate.service.participant.UserParticipantMappingService;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -35,8 +35,8 @@ public class TaskTrackingService {
     private final RuntimeService runtimeService;
     private final ParticipantService participantService;
     private final UserParticipantMappingService userParticipantMapping;
-    private final RepositoryService repositoryService;
     private final TaskAuthorizationService taskAuthorizationService;
+    private final ProcessMetadataCache processMetadataCache;
 
     public boolean canUserAccessTask(String userId, Task task) {
         return taskAuthorizationService.canUserAccessTask(userId, task);
@@ -133,6 +133,50 @@ public class TaskTrackingService {
     }
 
     public Map<String, Object> enrichedTaskToMap(Task task) {
+        return enrichTasks(List.of(task)).get(0);
+    }
+
+    /**
+     * Same as {@link #enrichedTaskToMap(Task)} for a whole list, in the same order: business keys,
+     * participants and destinations are loaded with a fixed number of set-based queries and the
+     * task type comes from the cached process metadata.
+     */
+    public List<Map<String, Object>> enrichTasks(Collection<Task> tasks) {
+        List<Map<String, Object>> result = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) {
+            return result;
+        }
+
+        Map<String, String> businessKeys = new HashMap<>();
+        Map<String, String> taskTypes = new HashMap<>();
+        tasks.forEach(task -> taskTypes.put(task.getId(), determineTaskType(task)));
+        Map<String, String> participants = Map.of();
+        Map<String, Object> destinations = Map.of();
+        try {
+            Set<String> processInstanceIds = tasks.stream()
+                    .map(Task::getProcessInstanceId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+            if (!processInstanceIds.isEmpty()) {
+                runtimeService.createProcessInstanceQuery()
+                        .processInstanceIds(processInstanceIds)
+                        .list()
+                        .forEach(pi -> businessKeys.put(pi.getId(), pi.getBusinessKey()));
+            }
+            participants = participantService.resolveParticipantsForTasks(tasks);
+            destinations = findDestinations(tasks, taskTypes);
+        } catch (Exception e) {
+            log.error("[TaskTracking] Error loading data for {} tasks: {}", tasks.size(), e.getMessage());
+        }
+
+        for (Task task : tasks) {
+            result.add(toMap(task, taskTypes.get(task.getId()), businessKeys, participants, destinations));
+        }
+        return result;
+    }
+
+    private Map<String, Object> toMap(Task task, String taskType, Map<String, String> businessKeys,
+                                      Map<String, String> participants, Map<String, Object> destinations) {
         Map<String, Object> taskMap = new HashMap<>();
 
         // Informazioni base del task
@@ -146,15 +190,11 @@ public class TaskTrackingService {
 
         try {
             // Aggiungi business key
-            ProcessInstance pi = runtimeService.createProcessInstanceQuery()
-                    .processInstanceId(task.getProcessInstanceId())
-                    .singleResult();
-
-            if (pi != null) {
-                taskMap.put("businessKey", pi.getBusinessKey());
+            if (businessKeys.containsKey(task.getProcessInstanceId())) {
+                taskMap.put("businessKey", businessKeys.get(task.getProcessInstanceId()));
 
                 // Participant info
-                String participantId = participantService.resolveParticipantForTask(task);
+                String participantId = participants.get(task.getId());
                 taskMap.put("participantId", participantId);
 
                 String participantName = participantService.getParticipantName(
@@ -163,17 +203,12 @@ public class TaskTrackingService {
             }
 
             // Aggiungi tipo di task (movement, binding, unbinding)
-            String taskType = determineTaskType(task);
             taskMap.put("taskType", taskType);
 
             // Se è un movement task, aggiungi la destinazione
-            if ("MOVEMENT".equals(taskType)) {
-                String destinationKey = task.getTaskDefinitionKey() + ".destination";
-                Object destination = runtimeService.getVariable(
-                        task.getExecutionId(), destinationKey);
-                if (destination != null) {
-                    taskMap.put("destination", destination.toString());
-                }
+            Object destination = destinations.get(task.getId());
+            if ("MOVEMENT".equals(taskType) && destination != null) {
+                taskMap.put("destination", destination.toString());
             }
 
         } catch (Exception e) {
@@ -183,26 +218,73 @@ public class TaskTrackingService {
         return taskMap;
     }
 
+    /**
+     * The {@code <activity>.destination} variable of each movement task (task id -> value).
+     * One query for all instances; the variable is normally on the task execution or the process
+     * instance, otherwise the only execution of the instance holding it (e.g. an enclosing scope).
+     */
+    private Map<String, Object> findDestinations(Collection<Task> tasks, Map<String, String> taskTypes) {
+        List<Task> movementTasks = tasks.stream()
+                .filter(task -> task.getProcessInstanceId() != null && "MOVEMENT".equals(taskTypes.get(task.getId())))
+                .toList();
+        if (movementTasks.isEmpty()) {
+            return Map.of();
+        }
+
+        String[] variableNames = movementTasks.stream()
+                .map(task -> task.getTaskDefinitionKey() + ".destination")
+                .distinct()
+                .toArray(String[]::new);
+        String[] processInstanceIds = movementTasks.stream()
+                .map(Task::getProcessInstanceId)
+                .distinct()
+                .toArray(String[]::new);
+
+        // executionId -> variable name -> value, and processInstanceId -> variable name -> values in any scope
+        Map<String, Map<String, Object>> byExecution = new HashMap<>();
+        Map<String, Map<String, List<Object>>> byInstance = new HashMap<>();
+        for (VariableInstance variable : runtimeService.createVariableInstanceQuery()
+                .variableNameIn(variableNames)
+                .processInstanceIdIn(processInstanceIds)
+                .list()) {
+            byExecution.computeIfAbsent(variable.getExecutionId(), k -> new HashMap<>())
+                    .put(variable.getName(), variable.getValue());
+            byInstance.computeIfAbsent(variable.getProcessInstanceId(), k -> new HashMap<>())
+                    .computeIfAbsent(variable.getName(), k -> new ArrayList<>(1))
+                    .add(variable.getValue());
+        }
+
+        Map<String, Object> destinations = new HashMap<>();
+        for (Task task : movementTasks) {
+            String destinationKey = task.getTaskDefinitionKey() + ".destination";
+            Object destination = byExecution.getOrDefault(task.getExecutionId(), Map.of()).get(destinationKey);
+            if (destination == null) {
+                destination = byExecution.getOrDefault(task.getProcessInstanceId(), Map.of()).get(destinationKey);
+            }
+            if (destination == null) {
+                // Without the execution tree only an unambiguous value can be attributed to the task
+                List<Object> values = byInstance.getOrDefault(task.getProcessInstanceId(), Map.of())
+                        .getOrDefault(destinationKey, List.of());
+                destination = values.size() == 1 ? values.get(0) : null;
+            }
+            if (destination != null) {
+                destinations.put(task.getId(), destination);
+            }
+        }
+        return destinations;
+    }
+
     private String determineTaskType(Task task) {
         try {
-            BpmnModelInstance model = repositoryService.getBpmnModelInstance(
-                    task.getProcessDefinitionId());
-            ModelElementInstance element = model.getModelElementById(task.getTaskDefinitionKey());
-
-            if (element instanceof FlowNode) {
-                ExtensionElements extensions = ((FlowNode) element).getExtensionElements();
-                if (extensions != null) {
-                    // Cerca il tipo nelle extension
-                    return extensions.getDomElement().getChildElements().stream()
-                            .filter(dom -> "type".equals(dom.getLocalName()))
-                            .map(dom -> dom.getTextContent().trim().toUpperCase())
-                            .findFirst()
-                            .orElse("STANDARD");
-                }
+            ProcessMetadataCache.DynamicTask element = processMetadataCache
+                    .get(task.getProcessDefinitionId())
+                    .task(task.getTaskDefinitionKey());
+            if (element != null && element.spaceType() != null) {
+                return element.spaceType().toUpperCase();
             }
         } catch (Exception e) {
             log.debug("[TaskTracking] Could not determine task type for {}", task.getId());
         }
         return "STANDARD";
     }
-}
\ No newline at end of file
+}
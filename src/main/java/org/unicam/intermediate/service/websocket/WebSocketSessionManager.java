@@ -4,11 +4,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.unicam.intermediate.models.dto.websocket.GpsResponse;
+import org.unicam.intermediate.websocket.OutboundMessageQueue;
 
-import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -20,6 +19,7 @@ import java.util.concurrent.CopyOnWriteArraySet;
 public class WebSocketSessionManager {
     
     private final ObjectMapper objectMapper;
+    private final OutboundMessageQueue outboundQueue;
     
     // userId -> Set of sessions (user might have multiple devices)
     private final Map<String, Set<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
@@ -62,11 +62,8 @@ public class WebSocketSessionManager {
             
             for (WebSocketSession session : sessions) {
                 if (!session.getId().equals(excludeSessionId) && session.isOpen()) {
-                    try {
-                        session.sendMessage(new TextMessage(message));
-                    } catch (IOException e) {
-                        log.error("[SessionManager] Failed to send to session {}", session.getId(), e);
-                    }
+                    // Buffered: a slow client never blocks the caller
+                    outboundQueue.send(session, message);
                 }
             }
         }
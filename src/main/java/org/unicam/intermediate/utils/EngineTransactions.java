@@ -0,0 +1,25 @@
+package org.unicam.intermediate.utils;
+
+import org.camunda.bpm.engine.impl.cfg.TransactionState;
+import org.camunda.bpm.engine.impl.context.Context;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
+
+public final class EngineTransactions {
+
+    private EngineTransactions() {
+    }
+
+    /**
+     * Runs the action once the current engine transaction commits, so in-memory state never sees
+     * a change that is rolled back; runs it right away outside of an engine command
+     */
+    public static void afterCommit(Runnable action) {
+        CommandContext commandContext = Context.getCommandContext();
+        if (commandContext == null) {
+            action.run();
+            return;
+        }
+        commandContext.getTransactionContext()
+                .addTransactionListener(TransactionState.COMMITTED, committed -> action.run());
+    }
+}
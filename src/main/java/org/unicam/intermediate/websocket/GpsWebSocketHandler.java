@@ -3,39 +3,28 @@ package org.unicam.intermediate.websocket;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.camunda.bpm.engine.IdentityService;
-import org.camunda.bpm.engine.RepositoryService;
 import org.camunda.bpm.engine.RuntimeService;
-import org.camunda.bpm.engine.TaskService;
-import org.camunda.bpm.engine.identity.Group;
-import org.camunda.bpm.engine.runtime.Execution;
-import org.camunda.bpm.engine.runtime.ProcessInstance;
-import org.camunda.bpm.engine.task.Task;
-import org.camunda.bpm.model.bpmn.BpmnModelInstance;
-import org.camunda.bpm.model.bpmn.instance.Participant;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
-import org.unicam.intermediate.models.WaitingBinding;
 import org.unicam.intermediate.models.dto.websocket.GpsMessage;
 import org.unicam.intermediate.models.dto.websocket.GpsResponse;
+import org.unicam.intermediate.models.enums.TaskType;
 import org.unicam.intermediate.models.pojo.Place;
-import org.unicam.intermediate.service.environmental.BindingService;
+import org.unicam.intermediate.service.environmental.BindingMatcher;
 import org.unicam.intermediate.service.environmental.EnvironmentDataService;
 import org.unicam.intermediate.service.environmental.LocationEventService;
-import org.unicam.intermediate.service.environmental.ProximityService;
+import org.unicam.intermediate.service.environmental.movement.MovementExecutionIndex;
 import org.unicam.intermediate.service.participant.ParticipantPositionService;
-import org.unicam.intermediate.service.participant.ParticipantService;
+import org.unicam.intermediate.service.BusinessKeyExecutor;
+import org.unicam.intermediate.service.SignalDispatcher;
 import org.unicam.intermediate.service.participant.UserParticipantMappingService;
-import org.unicam.intermediate.service.task.TaskTrackingService;
 import org.unicam.intermediate.service.websocket.WebSocketSessionManager;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 @Component
 @RequiredArgsConstructor
@@ -49,31 +38,84 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
     private final LocationEventService locationEventService;
     private final RuntimeService runtimeService;
     private final EnvironmentDataService environmentDataService;
-    private final BindingService bindingService;
-    private final ProximityService proximityService;
-    private final TaskService taskService;
-    private final RepositoryService repositoryService;
-    private final IdentityService identityService;
-    private final TaskTrackingService taskTrackingService;
-    private final ParticipantService participantService;
+    private final BindingMatcher bindingMatcher;
+    private final MovementExecutionIndex movementIndex;
+    private final SignalDispatcher signalDispatcher;
+    private final BusinessKeyExecutor businessKeyExecutor;
+    private final SessionMessagePipeline messagePipeline;
+    private final LocationUpdateCoalescer locationCoalescer;
+    private final HeartbeatScheduler heartbeatScheduler;
+    private final OutboundMessageQueue outboundQueue;
+
+    // Upper bound on the samples of one LOCATION_BATCH frame
+    private static final int MAX_BATCH_SAMPLES = 500;
+
+    private record TimedSample(GpsMessage.LocationSample sample, Instant timestamp) {
+    }
 
-    private final ScheduledExecutorService heartbeatExecutor = Executors.newScheduledThreadPool(1);
-    private final ConcurrentHashMap<String, Long> lastActivity = new ConcurrentHashMap<>();
+    private static final Set<String> COALESCIBLE_RESPONSES =
+            Set.of("LOCATION_PROCESSED", "ACK_HEARTBEAT", "BACKPRESSURE");
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        heartbeatScheduler.touch(session.getId());
+
+        // Only bookkeeping on the I/O thread: parsing, engine queries and signals run in the session queue
+        String payload = message.getPayload();
+
+        if (locationCoalescer.isEnabled() && locationCoalescer.isLocationUpdate(payload)) {
+            coalesceLocationUpdate(session, payload);
+            return;
+        }
+
+        if (!messagePipeline.submit(session.getId(), () -> processTextMessage(session, payload))) {
+            rejectMessage(session);
+        }
+    }
+
+    private void rejectMessage(WebSocketSession session) throws IOException {
+        log.warn("[GPS WS] Session {} of user {} has {} messages pending, rejecting message",
+                session.getId(), getUserId(session), messagePipeline.getPendingMessages(session.getId()));
+        sendError(session, "BACKPRESSURE", "Too many pending messages, slow down and retry");
+    }
+
+    /**
+     * Keeps only the newest pending LOCATION_UPDATE frame per participant of the session: a task is
+     * queued for the first frame, later ones of the same user and business key replace it until the task runs
+     */
+    private void coalesceLocationUpdate(WebSocketSession session, String payload) throws IOException {
+        String key = participantKey(getUserId(session), getBusinessKey(session), locationCoalescer.businessKeyOf(payload));
+        if (locationCoalescer.offer(session.getId(), key, payload) != LocationUpdateCoalescer.Offer.SCHEDULE) {
+            return;
+        }
+        if (!messagePipeline.submit(session.getId(), () -> processCoalescedLocation(session, key))) {
+            locationCoalescer.cancel(session.getId(), key);
+            rejectMessage(session);
+        }
+    }
+
+    private void processCoalescedLocation(WebSocketSession session, String participantKey) {
+        locationCoalescer.take(session.getId(), participantKey).ifPresent(payload -> processTextMessage(session, payload));
+    }
+
+    private void processTextMessage(WebSocketSession session, String payload) {
         String userId = getUserId(session);
         String businessKey = getBusinessKey(session); // Prendi dalla sessione
-        lastActivity.put(session.getId(), System.currentTimeMillis());
 
         try {
-            String payload = message.getPayload();
             log.debug("[GPS WS] Received from {} (BK: {}): {}", userId, businessKey, payload);
 
             GpsMessage gpsMessage = objectMapper.readValue(payload, GpsMessage.class);
 
             if (gpsMessage instanceof GpsMessage.LocationUpdate location) {
+                if (locationCoalescer.isEnabled()
+                        && !locationCoalescer.accept(session.getId(), participantKey(userId, businessKey, location.getBusinessKey()),
+                        location.getTimestamp())) {
+                    return;
+                }
                 handleLocationUpdate(session, userId, businessKey, location);
+            } else if (gpsMessage instanceof GpsMessage.LocationBatch batch) {
+                handleLocationBatch(session, userId, businessKey, batch);
             } else if (gpsMessage instanceof GpsMessage.Heartbeat) {
                 handleHeartbeat(session, userId);
             } else if (gpsMessage instanceof GpsMessage.StartTracking start) {
@@ -87,7 +129,11 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
 
         } catch (Exception e) {
             log.error("[GPS WS] Error processing message from {}: {}", userId, e.getMessage(), e);
-            sendError(session, "PROCESSING_ERROR", "Failed to process message: " + e.getMessage());
+            try {
+                sendError(session, "PROCESSING_ERROR", "Failed to process message: " + e.getMessage());
+            } catch (IOException sendFailure) {
+                log.warn("[GPS WS] Could not report error to {}: {}", userId, sendFailure.getMessage());
+            }
         }
     }
 
@@ -104,8 +150,21 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
             }
 
             sessionManager.addSession(userId, session);
-            lastActivity.put(session.getId(), System.currentTimeMillis());
+            messagePipeline.open(session.getId());
+            locationCoalescer.openSession(session.getId());
+            heartbeatScheduler.register(session);
+
+            // Discovery queries the engine: run it as the first task of the session queue
+            messagePipeline.submit(session.getId(), () -> welcome(session, userId, businessKey));
+
+        } catch (Exception e) {
+            log.error("[GPS WS] Error in connection", e);
+            session.close(CloseStatus.SERVER_ERROR.withReason("Server error: " + e.getMessage()));
+        }
+    }
 
+    private void welcome(WebSocketSession session, String userId, String businessKey) {
+        try {
             // AUTO-DISCOVER PARTICIPANT
             String participantId = null;
             String participantName = null;
@@ -159,179 +218,16 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
             log.info("[GPS WS] Connection established - userId: {}, participantId: {}, sessionId: {}",
                     userId, participantId, session.getId());
 
-            scheduleHeartbeat(session);
-
         } catch (Exception e) {
             log.error("[GPS WS] Error in connection", e);
-            session.close(CloseStatus.SERVER_ERROR.withReason("Server error: " + e.getMessage()));
-        }
-    }
-
-    /**
-     * Intelligently discover which participant this user should be
-     */
-    private ParticipantDiscoveryResult discoverParticipantForUser(String userId, String businessKey) {
-        try {
-            // 1. Find all active process instances with this business key
-            List<ProcessInstance> instances = runtimeService.createProcessInstanceQuery()
-                    .processInstanceBusinessKey(businessKey)
-                    .active()
-                    .list();
-
-            if (instances.isEmpty()) {
-                log.debug("[GPS WS] No active process instances for businessKey: {}", businessKey);
-                return null;
-            }
-
-            // 2. Collect all possible participants and their states
-            Map<String, ParticipantInfo> participantStates = new HashMap<>();
-
-            for (ProcessInstance pi : instances) {
-                // Get the process definition to understand participants
-                BpmnModelInstance model = repositoryService.getBpmnModelInstance(pi.getProcessDefinitionId());
-                Collection<Participant> participants = model.getModelElementsByType(Participant.class);
-
-                for (Participant p : participants) {
-                    if (p.getProcess() != null) {
-                        String pId = p.getId();
-                        String pName = p.getName() != null ? p.getName() : pId;
-
-                        ParticipantInfo info = participantStates.computeIfAbsent(pId,
-                                k -> new ParticipantInfo(pId, pName));
-
-                        // Check if this participant has active tasks
-                        List<Task> activeTasks = findTasksForParticipant(pi.getId(), pId);
-                        info.activeTasks.addAll(activeTasks);
-
-                        // Check if this participant is already claimed by another user
-                        String existingUser = userParticipantMapping.getUserForParticipant(businessKey, pId);
-                        if (existingUser != null) {
-                            info.claimedByUser = existingUser;
-                        }
-                    }
-                }
-            }
-
-            // 3. Strategy: Find the best participant for this user
-
-            // 3a. First priority: Tasks already assigned to this user
-            for (ParticipantInfo info : participantStates.values()) {
-                for (Task task : info.activeTasks) {
-                    if (userId.equals(task.getAssignee())) {
-                        log.info("[GPS WS] Found participant {} with task assigned to user {}",
-                                info.participantId, userId);
-                        return new ParticipantDiscoveryResult(info.participantId, info.participantName);
-                    }
-                }
-            }
-
-            // 3b. Second priority: Unclaimed participant with tasks this user can access
-            for (ParticipantInfo info : participantStates.values()) {
-                if (info.claimedByUser == null) { // Not claimed by another user
-                    for (Task task : info.activeTasks) {
-                        if (taskTrackingService.canUserAccessTask(userId, task)) {
-                            log.info("[GPS WS] Found unclaimed participant {} with accessible tasks for user {}",
-                                    info.participantId, userId);
-                            return new ParticipantDiscoveryResult(info.participantId, info.participantName);
-                        }
-                    }
-                }
-            }
-
-            // 3c. Third priority: Based on user groups/roles matching participant names
-            List<Group> userGroups = identityService.createGroupQuery()
-                    .groupMember(userId)
-                    .list();
-
-            for (ParticipantInfo info : participantStates.values()) {
-                if (info.claimedByUser == null) {
-                    // Match based on group names vs participant names
-                    for (Group group : userGroups) {
-                        if (info.participantName.toLowerCase().contains(group.getId().toLowerCase()) ||
-                                group.getId().toLowerCase().contains(info.participantName.toLowerCase())) {
-
-                            log.info("[GPS WS] Matched participant {} to user {} based on group {}",
-                                    info.participantId, userId, group.getId());
-                            return new ParticipantDiscoveryResult(info.participantId, info.participantName);
-                        }
-                    }
-                }
-            }
-
-            // 3d. Last resort: First available unclaimed participant
-            for (ParticipantInfo info : participantStates.values()) {
-                if (info.claimedByUser == null && !info.activeTasks.isEmpty()) {
-                    log.info("[GPS WS] Assigning first available participant {} to user {}",
-                            info.participantId, userId);
-                    return new ParticipantDiscoveryResult(info.participantId, info.participantName);
-                }
-            }
-
-            log.debug("[GPS WS] Could not determine specific participant for user {} in BK {}",
-                    userId, businessKey);
-            return null;
-
-        } catch (Exception e) {
-            log.error("[GPS WS] Error during participant discovery", e);
-            return null;
-        }
-    }
-
-    /**
-     * Find tasks for a specific participant in a process instance
-     */
-    private List<Task> findTasksForParticipant(String processInstanceId, String participantId) {
-        List<Task> result = new ArrayList<>();
-
-        try {
-            // Get all active tasks for this process instance
-            List<Task> allTasks = taskService.createTaskQuery()
-                    .processInstanceId(processInstanceId)
-                    .active()
-                    .list();
-
-            for (Task task : allTasks) {
-                String taskParticipantId = participantService.resolveParticipantForTask(task);
-                if (participantId.equals(taskParticipantId)) {
-                    result.add(task);
-                }
+            try {
+                session.close(CloseStatus.SERVER_ERROR.withReason("Server error: " + e.getMessage()));
+            } catch (IOException closeFailure) {
+                log.warn("[GPS WS] Could not close session {}: {}", session.getId(), closeFailure.getMessage());
             }
-        } catch (Exception e) {
-            log.error("[GPS WS] Error finding tasks for participant", e);
         }
-
-        return result;
     }
 
-    /**
-     * Helper classes for participant discovery
-     */
-    private static class ParticipantInfo {
-        String participantId;
-        String participantName;
-        List<Task> activeTasks = new ArrayList<>();
-        String claimedByUser = null;
-
-        ParticipantInfo(String participantId, String participantName) {
-            this.participantId = participantId;
-            this.participantName = participantName;
-        }
-    }
-
-    private static class ParticipantDiscoveryResult {
-        String participantId;
-        String participantName;
-
-        ParticipantDiscoveryResult(String participantId, String participantName) {
-            this.participantId = participantId;
-            this.participantName = participantName;
-        }
-    }
-
-
-
-
-
     private void handleLocationUpdate(WebSocketSession session, String userId, String businessKey,
                                       GpsMessage.LocationUpdate location) throws IOException {
 
@@ -355,35 +251,14 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
             }
 
             // Lazy discovery if needed
-            String existingParticipantId = userParticipantMapping.getParticipantIdForUser(businessKey, userId);
-
-            if (existingParticipantId == null && businessKey != null) {
-                log.info("[GPS WS] Attempting lazy discovery for user {} in BK {}", userId, businessKey);
-
-                UserParticipantMappingService.ParticipantDiscoveryResult discovery =
-                        userParticipantMapping.autoDiscoverAndRegister(userId, businessKey);
+            discoverParticipantIfMissing(session, userId, businessKey);
 
-                if (discovery != null) {
-                    log.info("[GPS WS] Lazy discovery successful: user {} is now participant {}",
-                            userId, discovery.getParticipantId());
-
-                    // Notify client
-                    Map<String, Object> assignmentData = Map.of(
-                            "participantId", discovery.getParticipantId(),
-                            "participantName", discovery.getParticipantName(),
-                            "businessKey", businessKey
-                    );
-
-                    sendMessage(session, GpsResponse.success("PARTICIPANT_ASSIGNED",
-                            "Assigned as " + discovery.getParticipantName(), assignmentData));
-                }
-            }
             // Process location for ALL active tasks with this businessKey
             Map<String, Object> result = processLocationForBusinessKey(
                     userId,
                     businessKey,
-                    location.getLat(),
-                    location.getLon()
+                    List.of(new GpsMessage.LocationSample(location.getLat(), location.getLon(),
+                            location.getAccuracy(), location.getTimestamp()))
             );
 
             // Send response
@@ -398,8 +273,112 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
+    private void discoverParticipantIfMissing(WebSocketSession session, String userId, String businessKey)
+            throws IOException {
+        String existingParticipantId = userParticipantMapping.getParticipantIdForUser(businessKey, userId);
+
+        if (existingParticipantId == null && businessKey != null) {
+            log.info("[GPS WS] Attempting lazy discovery for user {} in BK {}", userId, businessKey);
+
+            UserParticipantMappingService.ParticipantDiscoveryResult discovery =
+                    userParticipantMapping.autoDiscoverAndRegister(userId, businessKey);
+
+            if (discovery != null) {
+                log.info("[GPS WS] Lazy discovery successful: user {} is now participant {}",
+                        userId, discovery.getParticipantId());
+
+                // Notify client
+                Map<String, Object> assignmentData = Map.of(
+                        "participantId", discovery.getParticipantId(),
+                        "participantName", discovery.getParticipantName(),
+                        "businessKey", businessKey
+                );
+
+                sendMessage(session, GpsResponse.success("PARTICIPANT_ASSIGNED",
+                        "Assigned as " + discovery.getParticipantName(), assignmentData));
+            }
+        }
+    }
+
+    /**
+     * A batch is handled as one location update: every sample moves the participant (so the place
+     * tracking sees the whole path), then the engine is checked once and one response lists
+     * everything the batch triggered
+     */
+    private void handleLocationBatch(WebSocketSession session, String userId, String businessKey,
+                                     GpsMessage.LocationBatch batch) throws IOException {
+        List<GpsMessage.LocationSample> samples = batch.getSamples() != null ? batch.getSamples() : List.of();
+        if (samples.size() > MAX_BATCH_SAMPLES) {
+            sendError(session, "BATCH_TOO_LARGE", "A batch may carry at most " + MAX_BATCH_SAMPLES + " samples");
+            return;
+        }
+
+        // A sample without timestamp takes the one of the sample before it, so it stays where it arrived
+        List<TimedSample> valid = new ArrayList<>(samples.size());
+        Instant lastTimestamp = null;
+        for (GpsMessage.LocationSample sample : samples) {
+            if (sample != null && sample.getTimestamp() != null) {
+                lastTimestamp = sample.getTimestamp();
+            }
+            if (sample != null && sample.getLat() != null && sample.getLon() != null
+                    && Math.abs(sample.getLat()) <= 90 && Math.abs(sample.getLon()) <= 180) {
+                valid.add(new TimedSample(sample, lastTimestamp));
+            }
+        }
+        if (valid.isEmpty()) {
+            sendError(session, "INVALID_LOCATION", "Batch contains no valid samples");
+            return;
+        }
+        // Oldest first; the sort is stable, so equal timestamps keep their arrival order
+        valid.sort(Comparator.comparing(TimedSample::timestamp, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        log.info("[GPS WS] Location batch - User: {}, BK: {}, {} samples ({} valid)",
+                userId, businessKey, samples.size(), valid.size());
+
+        try {
+            if (batch.getBusinessKey() != null && !batch.getBusinessKey().isBlank()) {
+                businessKey = batch.getBusinessKey();
+            }
+
+            // Same newest-timestamp rule as single updates: an older batch must not move the participant back
+            List<TimedSample> accepted = locationCoalescer.isEnabled()
+                    ? locationCoalescer.acceptBatch(session.getId(), participantKey(userId, businessKey, null),
+                    valid, TimedSample::timestamp)
+                    : valid;
+            if (accepted.isEmpty()) {
+                log.debug("[GPS WS] Dropped batch of {} older than its last accepted sample", userId);
+                return;
+            }
+
+            discoverParticipantIfMissing(session, userId, businessKey);
+
+            // Samples sorted before the first timestamp take it, so the history stays in time order
+            Instant first = accepted.stream().map(TimedSample::timestamp).filter(Objects::nonNull)
+                    .findFirst().orElse(null);
+            List<GpsMessage.LocationSample> timed = accepted.stream()
+                    .map(timedSample -> {
+                        GpsMessage.LocationSample sample = timedSample.sample();
+                        Instant timestamp = timedSample.timestamp() != null ? timedSample.timestamp() : first;
+                        return new GpsMessage.LocationSample(sample.getLat(), sample.getLon(),
+                                sample.getAccuracy(), timestamp);
+                    })
+                    .toList();
+
+            Map<String, Object> result = processLocationForBusinessKey(userId, businessKey, timed);
+            result.put("samplesReceived", samples.size());
+            result.put("samplesProcessed", accepted.size());
+
+            sendMessage(session, GpsResponse.success("LOCATION_BATCH_PROCESSED",
+                    "Location batch processed", result));
+
+        } catch (Exception e) {
+            log.error("[GPS WS] Failed to process location batch: {}", e.getMessage(), e);
+            sendError(session, "PROCESSING_FAILED", "Failed to process location batch");
+        }
+    }
+
     private Map<String, Object> processLocationForBusinessKey(String userId, String businessKey,
-                                                              double lat, double lon) {
+                                                              List<GpsMessage.LocationSample> samples) {
         Map<String, Object> result = new HashMap<>();
 
         if (businessKey == null || businessKey.isBlank()) {
@@ -408,6 +387,14 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
             return result;
         }
 
+        // Positions, movements and bindings of a business key are processed one update at a time
+        return businessKeyExecutor.call(businessKey, () -> processOnBusinessKeyActor(userId, businessKey, samples));
+    }
+
+    private Map<String, Object> processOnBusinessKeyActor(String userId, String businessKey,
+                                                          List<GpsMessage.LocationSample> samples) {
+        Map<String, Object> result = new HashMap<>();
+
         // ALWAYS use the mapped participantId, not userId
         String participantId = userParticipantMapping.getParticipantIdForUser(businessKey, userId);
 
@@ -422,48 +409,58 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
         log.debug("[GPS WS] Processing location for user {} as participant {} in BK {}",
                 userId, participantId, businessKey);
 
-        // Update position using the correct participantId
-        String currentPlace = updatePosition(participantId, lat, lon);
+        // Update position using the correct participantId, following the samples in order
+        String currentPlace = positionService.getPlaceId(participantId);
+        boolean placeChanged = false;
+        Set<String> visitedPlaces = new LinkedHashSet<>();
+        for (GpsMessage.LocationSample sample : samples) {
+            String place = updatePosition(participantId, sample);
+            placeChanged |= !Objects.equals(place, currentPlace);
+            currentPlace = place;
+            if (currentPlace != null) {
+                visitedPlaces.add(currentPlace);
+            }
+        }
         result.put("currentPlace", currentPlace);
+        result.put("visitedPlaces", visitedPlaces);
         result.put("participantId", participantId);
 
         // Process ALL types of tasks for this businessKey
         List<String> triggeredEvents = new ArrayList<>();
 
-        // 1. Check movement tasks
-        boolean movementCompleted = checkAndSignalMovementTasks(businessKey, userId, lat, lon);
+        // 1. Check movement tasks: reached if any sample was inside the destination
+        boolean movementCompleted = checkAndSignalMovementTasks(businessKey, participantId, userId, destId -> samples.stream()
+                .anyMatch(sample -> environmentDataService.isLocationInPlace(sample.getLat(), sample.getLon(), destId)));
         if (movementCompleted) {
             triggeredEvents.add("MOVEMENT_COMPLETED");
         }
 
-        // 2. Check binding readiness
-        boolean bindingReady = checkAndSignalBindings(businessKey, userId);
-        if (bindingReady) {
-            triggeredEvents.add("BINDING_READY");
-        }
-
-        // 3. Check unbinding readiness
-        boolean unbindingReady = checkAndSignalUnbindings(businessKey, userId);
-        if (unbindingReady) {
-            triggeredEvents.add("UNBINDING_READY");
+        // 2-3. Bindings and unbindings can only become ready when the participant enters another place
+        if (placeChanged) {
+            for (BindingMatcher.Match match : bindingMatcher.onPlaceChanged(businessKey, participantId)) {
+                triggeredEvents.add(match.taskType() == TaskType.BINDING ? "BINDING_READY" : "UNBINDING_READY");
+            }
         }
 
         result.put("triggeredEvents", triggeredEvents);
         result.put("userId", userId);
         result.put("businessKey", businessKey);
-        result.put("location", Map.of("lat", lat, "lon", lon));
+        GpsMessage.LocationSample last = samples.get(samples.size() - 1);
+        result.put("location", Map.of("lat", last.getLat(), "lon", last.getLon()));
 
         log.info("[GPS WS] Processed location for BK {}: triggered {}", businessKey, triggeredEvents);
 
         return result;
     }
 
-    private String updatePosition(String participantId, double lat, double lon) {
-        Optional<Place> place = environmentDataService.findPlaceContainingLocation(lat, lon);
-        String placeId = place.map(Place::getId).orElse(null);
-
-        // Aggiorna posizione per il participant
-        positionService.updatePosition(participantId, lat, lon, placeId);
+    private String updatePosition(String participantId, GpsMessage.LocationSample sample) {
+        // Aggiorna posizione per il participant, con l'ora del campione se il client l'ha inviata
+        long timestamp = sample.getTimestamp() != null
+                ? sample.getTimestamp().toEpochMilli()
+                : System.currentTimeMillis();
+        String placeId = positionService.updatePosition(participantId, sample.getLat(), sample.getLon(), timestamp)
+                .map(Place::getId)
+                .orElse(null);
 
         log.trace("[GPS WS] Updated position for participant {} in place: {}",
                 participantId, placeId);
@@ -472,235 +469,34 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
     }
 
 
-    private boolean checkAndSignalMovementTasks(String businessKey, String userId, double lat, double lon) {
-        // Find all active movement tasks for this businessKey
-        List<ProcessInstance> instances = runtimeService.createProcessInstanceQuery()
-                .processInstanceBusinessKey(businessKey)
-                .active()
-                .list();
-
-        for (ProcessInstance pi : instances) {
-            List<Execution> executions = runtimeService.createExecutionQuery()
-                    .processInstanceId(pi.getProcessInstanceId())
-                    .active()
-                    .list();
-
-            for (Execution exe : executions) {
-                List<String> activityIds = runtimeService.getActiveActivityIds(exe.getId());
-
-                for (String activityId : activityIds) {
-                    // Check if this is a movement task with a destination
-                    String destinationKey = activityId + ".destination";
-                    Object destination = runtimeService.getVariable(exe.getId(), destinationKey);
-
-                    if (destination != null) {
-                        String destId = destination.toString();
-
-                        // Check if we're in the destination
-                        if (environmentDataService.isLocationInPlace(lat, lon, destId)) {
-                            log.info("[GPS WS] MOVEMENT COMPLETED - User {} reached {} for task {}",
-                                    userId, destId, activityId);
-
-                            // Signal the execution
-                            runtimeService.signal(exe.getId());
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
-
-        return false;
-    }
-
-    private boolean checkAndSignalBindings(String businessKey, String userId) {
-        // Get the correct participant ID for this user
-        String participantId = userParticipantMapping.getParticipantIdForUser(businessKey, userId);
-
-        if (participantId == null) {
-            log.warn("[GPS WS] No participant mapping for user {} in BK {}, cannot check bindings",
-                    userId, businessKey);
-            return false;
-        }
-
-        List<WaitingBinding> waitingBindings = bindingService.getAllWaitingBindings();
-
-        for (WaitingBinding wb : waitingBindings) {
-            if (!wb.getBusinessKey().equals(businessKey)) continue;
-
-            // Check if this participant is involved
-            boolean isCurrentParticipant = wb.getCurrentParticipantId().equals(participantId);
-            boolean isTargetParticipant = wb.getTargetParticipantId().equals(participantId);
-
-            if (!isCurrentParticipant && !isTargetParticipant) {
-                continue;
-            }
-
-            // Determina chi è l'altro partecipante
-            String otherParticipantId = isCurrentParticipant ?
-                    wb.getTargetParticipantId() : wb.getCurrentParticipantId();
-
-            // Cerca il WaitingBinding dell'altro partecipante
-            Optional<WaitingBinding> otherWaiting = bindingService.findWaitingBinding(
-                    businessKey, otherParticipantId);
-
-            if (!otherWaiting.isPresent()) {
-                log.debug("[GPS WS] Other participant {} not waiting yet for binding", otherParticipantId);
+    private boolean checkAndSignalMovementTasks(String businessKey, String participantId, String userId,
+                                                Predicate<String> reachedDestination) {
+        // Waiting movements come from the in-memory index: no engine query unless one is reached
+        for (MovementExecutionIndex.WaitingMovement movement : movementIndex.waitingMovements(businessKey, participantId)) {
+            if (!reachedDestination.test(movement.destinationId()) || !movementIndex.claim(movement)) {
                 continue;
             }
+            log.info("[GPS WS] MOVEMENT COMPLETED - User {} reached {} for task {}",
+                    userId, movement.destinationId(), movement.activityId());
 
-            // Ora controlla se sono nella stessa place
-            Place bindingPlace = proximityService.getBindingPlace(
-                    wb.getCurrentParticipantId(),
-                    wb.getTargetParticipantId());
-
-            if (bindingPlace != null) {
-                log.info("[GPS WS] BINDING READY - Participants {} and {} in same place: {}",
-                        wb.getCurrentParticipantId(),
-                        wb.getTargetParticipantId(),
-                        bindingPlace.getName());
-
-                // IMPORTANTE: Prendi gli executionId PRIMA di rimuovere i binding!
-                String execution1 = wb.getExecutionId();
-                String execution2 = otherWaiting.get().getExecutionId();
-
-                // Rimuovi i waiting bindings
-                bindingService.removeWaitingBinding(businessKey, wb.getCurrentParticipantId());
-                bindingService.removeWaitingBinding(businessKey, wb.getTargetParticipantId());
-
-                // Segnala ENTRAMBI gli execution
-                try {
-                    log.info("[GPS WS] Signaling execution {} for participant {}",
-                            execution1, wb.getCurrentParticipantId());
-                    runtimeService.signal(execution1);
-                } catch (Exception e) {
-                    log.error("[GPS WS] Failed to signal execution {}: {}", execution1, e.getMessage());
+            // Signal the execution off this thread; if it fails and the task still waits, the next sample retries
+            signalDispatcher.submit(movement.executionId(), "movement " + movement.activityId(), () -> {
+                if (runtimeService.createExecutionQuery().executionId(movement.executionId()).count() > 0) {
+                    movementIndex.register(movement);
                 }
-
-                try {
-                    log.info("[GPS WS] Signaling execution {} for participant {}",
-                            execution2, otherWaiting.get().getCurrentParticipantId());
-                    runtimeService.signal(execution2);
-                } catch (Exception e) {
-                    log.error("[GPS WS] Failed to signal execution {}: {}", execution2, e.getMessage());
-                }
-
-                return true;
-            }
+            });
+            return true;
         }
 
         return false;
     }
 
-    private boolean checkAndSignalUnbindings(String businessKey, String userId) {
-        String participantId = userParticipantMapping.getParticipantIdForUser(businessKey, userId);
-
-        if (participantId == null) {
-            log.warn("[GPS WS] No participant mapping for user {} in BK {}, cannot check unbindings",
-                    userId, businessKey);
-            return false;
-        }
-
-        List<WaitingBinding> waitingUnbindings = bindingService.getAllWaitingUnbindings();
-
-        for (WaitingBinding wu : waitingUnbindings) {
-            if (!wu.getBusinessKey().equals(businessKey)) continue;
-
-            // Check if this participant is involved
-            boolean isCurrentParticipant = wu.getCurrentParticipantId().equals(participantId);
-            boolean isTargetParticipant = wu.getTargetParticipantId().equals(participantId);
-
-            if (!isCurrentParticipant && !isTargetParticipant) {
-                continue;
-            }
-
-            // Find the other participant
-            String otherParticipantId = isCurrentParticipant ?
-                    wu.getTargetParticipantId() : wu.getCurrentParticipantId();
-
-            // Check if both are waiting for unbinding
-            Optional<WaitingBinding> otherWaiting = bindingService.findWaitingUnbinding(
-                    businessKey, otherParticipantId);
-
-            if (!otherWaiting.isPresent()) {
-                log.debug("[GPS WS] Other participant {} not waiting yet for unbinding", otherParticipantId);
-                continue;
-            }
-
-            // CRITICAL FIX: Use CURRENT positions to check proximity
-            Place unbindingPlace = proximityService.getBindingPlace(
-                    wu.getCurrentParticipantId(),
-                    wu.getTargetParticipantId());
-
-            if (unbindingPlace != null) {
-                log.info("[GPS WS] UNBINDING READY - Participants {} and {} in same place: {}",
-                        wu.getCurrentParticipantId(),
-                        wu.getTargetParticipantId(),
-                        unbindingPlace.getName());
-
-                String execution1 = wu.getExecutionId();
-                String execution2 = otherWaiting.get().getExecutionId();
-
-                if (!isExecutionActive(execution1)) {
-                    log.error("[GPS WS] Execution {} for participant {} is no longer active!",
-                            execution1, wu.getCurrentParticipantId());
-                    bindingService.removeWaitingUnbinding(businessKey, wu.getCurrentParticipantId());
-                    continue;
-                }
-
-                if (!isExecutionActive(execution2)) {
-                    log.error("[GPS WS] Execution {} for participant {} is no longer active!",
-                            execution2, otherWaiting.get().getCurrentParticipantId());
-                    bindingService.removeWaitingUnbinding(businessKey, otherParticipantId);
-                    continue;
-                }
-
-                // Remove BOTH unbindings using correct keys
-                bindingService.removeWaitingUnbinding(businessKey, wu.getCurrentParticipantId());
-                bindingService.removeWaitingUnbinding(businessKey, otherParticipantId);
-
-                // Signal both executions
-                try {
-                    log.info("[GPS WS] Signaling unbinding execution {} for participant {}",
-                            execution1, wu.getCurrentParticipantId());
-                    runtimeService.signal(execution1);
-                } catch (Exception e) {
-                    log.error("[GPS WS] Failed to signal unbinding execution {}: {}",
-                            execution1, e.getMessage());
-                }
-
-                try {
-                    log.info("[GPS WS] Signaling unbinding execution {} for participant {}",
-                            execution2, otherParticipantId);
-                    runtimeService.signal(execution2);
-                } catch (Exception e) {
-                    log.error("[GPS WS] Failed to signal unbinding execution {}: {}",
-                            execution2, e.getMessage());
-                }
-
-                return true;
-            } else {
-                // Debug why they're not in same place
-                ProximityService.BindingReadiness readiness = proximityService.checkBindingReadiness(
-                        wu.getCurrentParticipantId(), wu.getTargetParticipantId());
-                log.debug("[GPS WS] Unbinding not ready: {}", readiness.message());
-            }
-        }
-
-        return false;
-    }
-
-    // Metodo helper per verificare se un execution è ancora attivo
-    private boolean isExecutionActive(String executionId) {
-        try {
-            Execution execution = runtimeService.createExecutionQuery()
-                    .executionId(executionId)
-                    .singleResult();
-            return execution != null;
-        } catch (Exception e) {
-            log.error("[GPS WS] Error checking execution {}: {}", executionId, e.getMessage());
-            return false;
-        }
+    // Samples are ordered per user and business key, the message one overriding the session one
+    private static String participantKey(String userId, String sessionBusinessKey, String messageBusinessKey) {
+        String businessKey = messageBusinessKey != null && !messageBusinessKey.isBlank()
+                ? messageBusinessKey
+                : sessionBusinessKey;
+        return userId + ":" + businessKey;
     }
 
     private String getBusinessKey(WebSocketSession session) {
@@ -748,7 +544,9 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
     private void sendMessage(WebSocketSession session, GpsResponse response) throws IOException {
         if (session.isOpen()) {
             String json = objectMapper.writeValueAsString(response);
-            session.sendMessage(new TextMessage(json));
+            // Status responses only matter in their latest version, the rest must all reach the client
+            String coalesceKey = COALESCIBLE_RESPONSES.contains(response.getType()) ? response.getType() : null;
+            outboundQueue.send(session, json, coalesceKey);
         }
     }
 
@@ -761,37 +559,18 @@ public class GpsWebSocketHandler extends TextWebSocketHandler {
         String userId = getUserId(session);
         log.error("[GPS WS] Transport error for userId: {}", userId, exception);
         sessionManager.removeSession(userId, session.getId());
+        messagePipeline.close(session.getId());
+        outboundQueue.close(session.getId());
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         String userId = getUserId(session);
         sessionManager.removeSession(userId, session.getId());
-        lastActivity.remove(session.getId());
+        messagePipeline.close(session.getId());
+        locationCoalescer.forgetSession(session.getId());
+        heartbeatScheduler.unregister(session.getId());
+        outboundQueue.close(session.getId());
         log.info("[GPS WS] Connection closed - userId: {}, status: {}", userId, status);
     }
-
-    private void scheduleHeartbeat(WebSocketSession session) {
-        heartbeatExecutor.scheduleWithFixedDelay(() -> {
-            try {
-                if (!session.isOpen()) {
-                    return;
-                }
-
-                Long lastActivityTime = lastActivity.get(session.getId());
-                if (lastActivityTime != null) {
-                    long inactiveTime = System.currentTimeMillis() - lastActivityTime;
-
-                    if (inactiveTime > 60000) {
-                        log.warn("[GPS WS] Closing inactive session: {}", session.getId());
-                        session.close(CloseStatus.GOING_AWAY.withReason("Inactive"));
-                    } else if (inactiveTime > 30000) {
-                        session.sendMessage(new PingMessage());
-                    }
-                }
-            } catch (Exception e) {
-                log.error("[GPS WS] Heartbeat error for session: {}", session.getId(), e);
-            }
-        }, 30, 30, TimeUnit.SECONDS);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,198 @@
+package org.unicam.intermediate.websocket;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Idle detection for all GPS WebSocket sessions on a single hashed timing wheel.
+ *
+ * Every session sits in the wheel slot of its next deadline (last activity + ping delay, or + idle
+ * timeout once pinged). Activity only stores a timestamp; the entry is re-armed lazily when its slot
+ * comes up, so a tick only visits the sessions whose deadline falls in it, not every open session.
+ * Entries of closed sessions are dropped the next time their slot is reached.
+ */
+@Component
+@Slf4j
+public class HeartbeatScheduler {
+
+    private static final long TICK_MILLIS = 1000;
+
+    private final long pingAfterMillis;
+    private final long idleTimeoutMillis;
+
+    private final Queue<Entry>[] wheel;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker;
+    private final OutboundMessageQueue outboundQueue;
+
+    // Only read and written by the ticker thread
+    private long currentTick;
+
+    private final LongAdder pings = new LongAdder();
+    private final LongAdder closedIdle = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public HeartbeatScheduler(@Value("${gps.websocket.ping-after-seconds:30}") long pingAfterSeconds,
+                              @Value("${gps.websocket.idle-timeout-seconds:60}") long idleTimeoutSeconds,
+                              OutboundMessageQueue outboundQueue) {
+        this.outboundQueue = outboundQueue;
+        this.pingAfterMillis = TimeUnit.SECONDS.toMillis(pingAfterSeconds);
+        this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(Math.max(idleTimeoutSeconds, pingAfterSeconds));
+
+        // One lap covers the longest deadline, so an entry is re-queued at most once per deadline
+        int slots = Integer.highestOneBit((int) (idleTimeoutMillis / TICK_MILLIS) + 1) << 1;
+        this.wheel = new Queue[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        this.currentTick = System.currentTimeMillis() / TICK_MILLIS;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gps-ws-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void register(WebSocketSession session) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(session, now);
+        Entry previous = entries.put(session.getId(), entry);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        schedule(entry, now + pingAfterMillis);
+    }
+
+    public void touch(String sessionId) {
+        Entry entry = entries.get(sessionId);
+        if (entry != null) {
+            entry.lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    public void unregister(String sessionId) {
+        Entry entry = entries.remove(sessionId);
+        if (entry != null) {
+            entry.cancelled = true;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "sessions", entries.size(),
+                "wheelSlots", wheel.length,
+                "pingsSent", pings.sum(),
+                "closedIdle", closedIdle.sum()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    private void schedule(Entry entry, long deadline) {
+        entry.deadlineTick = ceilTick(deadline);
+        wheel[(int) (entry.deadlineTick & (wheel.length - 1))].add(entry);
+    }
+
+    private void tick() {
+        try {
+            // Ticks that have fully started; deadlines are rounded up, so nothing is checked early
+            long target = System.currentTimeMillis() / TICK_MILLIS;
+            // Catch up on ticks missed by a late run, without ever going more than a lap back
+            long from = Math.max(currentTick + 1, target - wheel.length + 1);
+            for (long tick = from; tick <= target; tick++) {
+                currentTick = tick;
+                expire(wheel[(int) (tick & (wheel.length - 1))]);
+            }
+            currentTick = Math.max(currentTick, target);
+        } catch (Throwable t) {
+            // An exception escaping here would cancel the ticker for good
+            log.error("[GPS WS] Heartbeat tick failed", t);
+        }
+    }
+
+    private void expire(Queue<Entry> slot) {
+        // Entries re-armed into this same slot during the pass wait for the next lap
+        for (int n = slot.size(); n > 0; n--) {
+            Entry entry = slot.poll();
+            if (entry == null) {
+                return;
+            }
+            if (entry.cancelled || !entry.session.isOpen()) {
+                entries.remove(entry.session.getId(), entry);
+                continue;
+            }
+            if (entry.deadlineTick > currentTick) {
+                slot.add(entry);
+                continue;
+            }
+            try {
+                check(entry);
+            } catch (Exception e) {
+                log.error("[GPS WS] Heartbeat error for session: {}", entry.session.getId(), e);
+                schedule(entry, System.currentTimeMillis() + pingAfterMillis);
+            }
+        }
+    }
+
+    private void check(Entry entry) throws Exception {
+        long now = System.currentTimeMillis();
+        long lastActivity = entry.lastActivity;
+        long inactiveTime = now - lastActivity;
+
+        if (inactiveTime >= idleTimeoutMillis) {
+            log.warn("[GPS WS] Closing inactive session: {}", entry.session.getId());
+            entries.remove(entry.session.getId(), entry);
+            closedIdle.increment();
+            entry.session.close(CloseStatus.GOING_AWAY.withReason("Inactive"));
+        } else if (inactiveTime >= pingAfterMillis) {
+            if (entry.pingedFor != lastActivity) {
+                entry.pingedFor = lastActivity;
+                outboundQueue.sendPing(entry.session);
+                pings.increment();
+            }
+            schedule(entry, lastActivity + idleTimeoutMillis);
+        } else {
+            // Active since it was armed: move on to the new deadline
+            schedule(entry, lastActivity + pingAfterMillis);
+        }
+    }
+
+    private static long ceilTick(long millis) {
+        return (millis + TICK_MILLIS - 1) / TICK_MILLIS;
+    }
+
+    private static final class Entry {
+        private final WebSocketSession session;
+        private volatile long lastActivity;
+        private volatile boolean cancelled;
+        // Written by register() on the I/O thread, then by the ticker when it reschedules: not volatile
+        // because every write happens before the entry is added to a wheel slot, and the ticker only reads
+        // it after polling the entry, so the ConcurrentLinkedQueue add/poll publishes it
+        private long deadlineTick;
+        // Ticker thread only
+        private long pingedFor = -1;
+
+        private Entry(WebSocketSession session, long lastActivity) {
+            this.session = session;
+            this.lastActivity = lastActivity;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package org.unicam.intermediate.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Latest-wins buffer for LOCATION_UPDATE frames, one slot per participant (user and effective
+ * business key) of a session.
+ * The I/O thread only stores the raw frame: while one is waiting in the session queue, newer frames of
+ * the same participant replace it instead of being queued behind it, and frames of another business key
+ * get their own slot. The worker parses the frame it takes and drops samples whose {@code timestamp} is
+ * older than the newest one already accepted for the participant on any of its open sessions, so after a
+ * reconnect burst the engine only sees the freshest position.
+ */
+@Component
+@Slf4j
+public class LocationUpdateCoalescer {
+
+    // Cheap tests on the raw frame, no JSON parsing on the I/O thread
+    private static final Pattern LOCATION_UPDATE_TYPE = Pattern.compile("\"type\"\\s*:\\s*\"LOCATION_UPDATE\"");
+    private static final Pattern BUSINESS_KEY = Pattern.compile("\"businessKey\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    public enum Offer {
+        /** No frame of the participant was pending: the caller must queue a task that will take() it */
+        SCHEDULE,
+        /** Replaced a pending frame, which will be processed with this one's content */
+        MERGED,
+        /** The session is not open (anymore): the frame is dropped */
+        CLOSED
+    }
+
+    private final boolean enabled;
+
+    // sessionId -> pending frames and participants reported through the session; present only while open
+    private final Map<String, SessionSlots> sessions = new ConcurrentHashMap<>();
+    // participantKey -> newest accepted timestamp, kept while an open session reported the participant
+    private final Map<String, Newest> newest = new ConcurrentHashMap<>();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+
+    public LocationUpdateCoalescer(@Value("${gps.websocket.coalesce-location-updates:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLocationUpdate(String payload) {
+        return LOCATION_UPDATE_TYPE.matcher(payload).find();
+    }
+
+    /**
+     * Business key the frame overrides the session one with, null if it has none
+     */
+    public String businessKeyOf(String payload) {
+        Matcher matcher = BUSINESS_KEY.matcher(payload);
+        return matcher.find() && !matcher.group(1).isBlank() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Starts buffering for a new session; frames and samples of sessions not open are dropped
+     */
+    public void openSession(String sessionId) {
+        if (enabled) {
+            sessions.putIfAbsent(sessionId, new SessionSlots());
+        }
+    }
+
+    public Offer offer(String sessionId, String participantKey, String payload) {
+        received.increment();
+
+        Offer[] result = {Offer.CLOSED};
+        sessions.computeIfPresent(sessionId, (k, slots) -> {
+            result[0] = slots.pending.put(participantKey, payload) == null ? Offer.SCHEDULE : Offer.MERGED;
+            return slots;
+        });
+
+        if (result[0] == Offer.MERGED) {
+            merged.increment();
+        }
+        return result[0];
+    }
+
+    /**
+     * Removes and returns the newest pending frame of the participant on the session
+     */
+    public Optional<String> take(String sessionId, String participantKey) {
+        String[] result = new String[1];
+        sessions.computeIfPresent(sessionId, (k, slots) -> {
+            result[0] = slots.pending.remove(participantKey);
+            return slots;
+        });
+
+        if (result[0] != null) {
+            processed.increment();
+        }
+        return Optional.ofNullable(result[0]);
+    }
+
+    /**
+     * False if the sample is older than the newest one accepted for the participant, or the session
+     * is closed; otherwise records it as the newest. Samples without timestamp are always accepted.
+     */
+    public boolean accept(String sessionId, String participantKey, Instant timestamp) {
+        return !acceptBatch(sessionId, participantKey, Collections.singletonList(timestamp),
+                Function.identity()).isEmpty();
+    }
+
+    /**
+     * Batch version of {@link #accept}: keeps the samples, in the given order, not older than the newest
+     * one accepted for the participant and records the newest of them. Nothing is kept for a closed session.
+     */
+    public <T> List<T> acceptBatch(String sessionId, String participantKey, List<T> samples,
+                                   Function<T, Instant> timestampOf) {
+        List<T> accepted = new ArrayList<>(samples.size());
+        // The session bin lock orders this against forgetSession: no timestamp is recorded after it
+        SessionSlots open = sessions.computeIfPresent(sessionId, (k, slots) -> {
+            if (slots.participants.add(participantKey)) {
+                newest.compute(participantKey, (key, entry) -> {
+                    Newest counted = entry != null ? entry : new Newest();
+                    counted.sessions++;
+                    return counted;
+                });
+            }
+            Newest entry = newest.get(participantKey);
+            synchronized (entry) {
+                for (T sample : samples) {
+                    Instant timestamp = timestampOf.apply(sample);
+                    if (timestamp != null && entry.timestamp != null && timestamp.isBefore(entry.timestamp)) {
+                        continue;
+                    }
+                    if (timestamp != null) {
+                        entry.timestamp = timestamp;
+                    }
+                    accepted.add(sample);
+                }
+            }
+            return slots;
+        });
+        if (open == null) {
+            return List.of();
+        }
+
+        int dropped = samples.size() - accepted.size();
+        if (dropped > 0) {
+            stale.add(dropped);
+            log.debug("[GPS Coalescer] Dropped {} out-of-order samples for {}", dropped, participantKey);
+        }
+        return accepted;
+    }
+
+    /**
+     * Drops the pending frame, when the task that would have taken it could not be queued
+     */
+    public void cancel(String sessionId, String participantKey) {
+        sessions.computeIfPresent(sessionId, (k, slots) -> {
+            slots.pending.remove(participantKey);
+            return slots;
+        });
+    }
+
+    /**
+     * Forgets the pending frames of a closed session, and the participants no other open session reports
+     */
+    public void forgetSession(String sessionId) {
+        SessionSlots slots = sessions.remove(sessionId);
+        if (slots == null) {
+            return;
+        }
+        for (String participantKey : slots.participants) {
+            newest.computeIfPresent(participantKey, (k, entry) -> --entry.sessions > 0 ? entry : null);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "enabled", enabled,
+                "received", received.sum(),
+                "merged", merged.sum(),
+                "droppedOutOfOrder", stale.sum(),
+                "processed", processed.sum(),
+                "pending", sessions.values().stream().mapToInt(SessionSlots::pendingCount).sum(),
+                "participants", newest.size()
+        );
+    }
+
+    // Guarded by the ConcurrentHashMap bin lock of its session
+    private static final class SessionSlots {
+        private final Map<String, String> pending = new HashMap<>(2);
+        private final Set<String> participants = new HashSet<>(2);
+
+        private int pendingCount() {
+            return pending.size();
+        }
+    }
+
+    // sessions is guarded by the bin lock of the participant, timestamp by the entry itself
+    private static final class Newest {
+        private Instant timestamp;
+        private int sessions;
+    }
+}
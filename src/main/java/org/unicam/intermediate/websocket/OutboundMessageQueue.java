@@ -0,0 +1,384 @@
+package org.unicam.intermediate.websocket;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffered, per-session outbound queue: the only place that writes to a WebSocket session.
+ *
+ * Callers (message workers, the I/O thread, broadcasts, the heartbeat) only append to the session
+ * buffer and return; a small sender pool writes the buffer out in order, one session at a time.
+ * Same limits as Spring's {@code ConcurrentWebSocketSessionDecorator}: a session whose send has been
+ * stuck longer than the send time limit is closed, and a buffer over its size limit is handled by
+ * the configured {@link OverflowPolicy}.
+ *
+ * A blocked send must not hold a sender thread, or a few stalled clients would stop delivery to every
+ * session: the container's blocking send timeout is set to the send time limit, and a watchdog closes
+ * sessions whose send is past the limit and interrupts the sender stuck on them.
+ */
+@Component
+@Slf4j
+public class OutboundMessageQueue {
+
+    public enum OverflowPolicy {
+        /** Drop the oldest buffered messages until the new one fits */
+        DROP_OLDEST,
+        /** Replace a buffered message with the same coalesce key; drop the oldest if there is none */
+        COALESCE,
+        /** Close the session, the client is not keeping up */
+        DISCONNECT
+    }
+
+    private static final int DRAIN_BATCH = 16;
+
+    private static final String PING_KEY = "__ping__";
+
+    // Tomcat user property bounding a blocking send (ms)
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final long sendTimeLimitMillis;
+    private final int bufferSizeLimit;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ThreadPoolExecutor senders;
+    private final ScheduledThreadPoolExecutor watchdog;
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+
+    public OutboundMessageQueue(@Value("${gps.websocket.sender-threads:4}") int senderThreads,
+                                @Value("${gps.websocket.send-time-limit-ms:10000}") long sendTimeLimitMillis,
+                                @Value("${gps.websocket.send-buffer-size-limit:524288}") int bufferSizeLimit,
+                                @Value("${gps.websocket.send-overflow-policy:COALESCE}") OverflowPolicy overflowPolicy) {
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.overflowPolicy = overflowPolicy;
+
+        AtomicInteger counter = new AtomicInteger();
+        // At most one flush task per session is queued, so the pool queue is bounded by the open sessions
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "gps-ws-sender-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.senders.allowCoreThreadTimeOut(true);
+
+        this.watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "gps-ws-send-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkEvery = Math.max(100, Math.min(1000, sendTimeLimitMillis / 4));
+        this.watchdog.scheduleWithFixedDelay(this::closeStuckSessions, checkEvery, checkEvery, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a text message; never blocks on the network
+     */
+    public void send(WebSocketSession session, String payload) {
+        send(session, payload, null);
+    }
+
+    /**
+     * Queues a text message. With the COALESCE policy, a buffered message with the same key is the
+     * first to be replaced when the buffer is full (e.g. an older LOCATION_PROCESSED status).
+     */
+    public void send(WebSocketSession session, String payload, String coalesceKey) {
+        int payloadBytes = utf8Length(payload);
+        enqueue(session, new TextMessage(payload), frameHeaderBytes(payloadBytes) + payloadBytes, coalesceKey);
+    }
+
+    public void sendPing(WebSocketSession session) {
+        // Only one ping is ever buffered: a new one is dropped while the previous is still waiting
+        enqueue(session, new PingMessage(), frameHeaderBytes(0), PING_KEY);
+    }
+
+    // Encoded size of the text, without encoding it
+    private static int utf8Length(String text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    // Server frames are not masked: 2 bytes, plus the extended payload length
+    private static int frameHeaderBytes(int payloadBytes) {
+        return payloadBytes <= 125 ? 2 : payloadBytes <= 0xFFFF ? 4 : 10;
+    }
+
+    /**
+     * Drops the buffer of a closed session; a send already in progress is left to finish
+     */
+    public void close(String sessionId) {
+        Outbox outbox = outboxes.remove(sessionId);
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "sessions", outboxes.size(),
+                "bufferedMessages", outboxes.values().stream().mapToInt(Outbox::size).sum(),
+                "sent", sent.sum(),
+                "dropped", dropped.sum(),
+                "coalesced", coalesced.sum(),
+                "disconnected", disconnected.sum(),
+                "overflowPolicy", overflowPolicy,
+                "bufferSizeLimit", bufferSizeLimit,
+                "sendTimeLimitMs", sendTimeLimitMillis
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        senders.shutdown();
+        try {
+            if (!senders.awaitTermination(5, TimeUnit.SECONDS)) {
+                senders.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            senders.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeStuckSessions() {
+        long now = System.currentTimeMillis();
+        for (Outbox outbox : outboxes.values()) {
+            long started = outbox.sendStartedAt;
+            if (started != 0 && now - started > sendTimeLimitMillis) {
+                log.warn("[GPS WS] Send to session {} stuck for {} ms", outbox.session.getId(), now - started);
+                // Free the sender first, the close frame would otherwise queue behind the stuck send
+                outbox.interruptSender();
+                disconnect(outbox);
+            }
+        }
+    }
+
+    private void enqueue(WebSocketSession session, WebSocketMessage<?> message, int size, String coalesceKey) {
+        if (!session.isOpen()) {
+            return;
+        }
+        Outbox outbox = outboxes.computeIfAbsent(session.getId(), id -> {
+            limitBlockingSend(session);
+            return new Outbox(session);
+        });
+        if (!outbox.offer(new Outgoing(message, size, coalesceKey))) {
+            disconnect(outbox);
+        }
+    }
+
+    private void limitBlockingSend(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession nativeSession
+                && nativeSession.getNativeSession() instanceof jakarta.websocket.Session wsSession) {
+            wsSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeLimitMillis);
+        }
+    }
+
+    private void disconnect(Outbox outbox) {
+        WebSocketSession session = outbox.session;
+        close(session.getId());
+        disconnected.increment();
+        log.warn("[GPS WS] Session {} is not keeping up with outbound messages, closing it", session.getId());
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.debug("[GPS WS] Could not close slow session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private record Outgoing(WebSocketMessage<?> message, int size, String coalesceKey) {
+    }
+
+    private final class Outbox {
+        private final WebSocketSession session;
+        private final Deque<Outgoing> buffer = new ArrayDeque<>();
+        private int bufferSize;
+        private boolean scheduled;
+        private boolean closed;
+        // Start of the send in progress, 0 when idle
+        private volatile long sendStartedAt;
+        private Thread sender;
+
+        private Outbox(WebSocketSession session) {
+            this.session = session;
+        }
+
+        /**
+         * Returns false when the session must be disconnected
+         */
+        synchronized boolean offer(Outgoing outgoing) {
+            if (closed) {
+                return true;
+            }
+            long started = sendStartedAt;
+            if (started != 0 && System.currentTimeMillis() - started > sendTimeLimitMillis) {
+                return false;
+            }
+            if (PING_KEY.equals(outgoing.coalesceKey()) && hasKey(PING_KEY)) {
+                coalesced.increment();
+                return true;
+            }
+
+            if (bufferSize + outgoing.size() > bufferSizeLimit && !makeRoom(outgoing)) {
+                return false;
+            }
+            buffer.addLast(outgoing);
+            bufferSize += outgoing.size();
+
+            if (!scheduled) {
+                scheduled = schedule();
+            }
+            return true;
+        }
+
+        private boolean makeRoom(Outgoing outgoing) {
+            switch (overflowPolicy) {
+                case DISCONNECT:
+                    return false;
+                case COALESCE:
+                    if (outgoing.coalesceKey() != null && removeSameKey(outgoing.coalesceKey())) {
+                        coalesced.increment();
+                    }
+                    // fall through: still too big, drop the oldest
+                case DROP_OLDEST:
+                default:
+                    while (!buffer.isEmpty() && bufferSize + outgoing.size() > bufferSizeLimit) {
+                        bufferSize -= buffer.pollFirst().size();
+                        dropped.increment();
+                    }
+                    return true;
+            }
+        }
+
+        private boolean hasKey(String coalesceKey) {
+            for (Outgoing queued : buffer) {
+                if (coalesceKey.equals(queued.coalesceKey())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean removeSameKey(String coalesceKey) {
+            for (Iterator<Outgoing> it = buffer.iterator(); it.hasNext(); ) {
+                Outgoing queued = it.next();
+                if (Objects.equals(queued.coalesceKey(), coalesceKey)) {
+                    it.remove();
+                    bufferSize -= queued.size();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized void close() {
+            closed = true;
+            buffer.clear();
+            bufferSize = 0;
+        }
+
+        synchronized int size() {
+            return buffer.size();
+        }
+
+        // Under the lock, so the interrupt cannot reach the thread once it has moved on to another send
+        synchronized void interruptSender() {
+            if (sender != null) {
+                sender.interrupt();
+            }
+        }
+
+        private boolean schedule() {
+            try {
+                senders.execute(this::flush);
+                return true;
+            } catch (RejectedExecutionException e) {
+                log.warn("[GPS WS] Sender pool shut down, dropping outbound messages of session {}", session.getId());
+                buffer.clear();
+                bufferSize = 0;
+                return false;
+            }
+        }
+
+        private void flush() {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                Outgoing outgoing;
+                synchronized (this) {
+                    outgoing = buffer.pollFirst();
+                    if (outgoing == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    bufferSize -= outgoing.size();
+                }
+                if (!session.isOpen()) {
+                    continue;
+                }
+                synchronized (this) {
+                    sender = Thread.currentThread();
+                }
+                sendStartedAt = System.currentTimeMillis();
+                try {
+                    session.sendMessage(outgoing.message());
+                    sent.increment();
+                } catch (IOException | RuntimeException e) {
+                    log.error("[GPS WS] Failed to send to session {}: {}", session.getId(), e.getMessage());
+                } finally {
+                    sendStartedAt = 0;
+                    synchronized (this) {
+                        sender = null;
+                        // A watchdog interrupt must not leak into the next session served by this thread
+                        Thread.interrupted();
+                    }
+                }
+            }
+
+            // Still messages left: go to the back of the pool queue so other sessions get a turn
+            synchronized (this) {
+                scheduled = !buffer.isEmpty() && schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.unicam.intermediate.websocket;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves WebSocket message handling off the container I/O threads.
+ * Every session gets its own FIFO queue, so messages of one connection are still processed
+ * one at a time and in arrival order, while different sessions run in parallel on a bounded
+ * worker pool. A session whose queue is full gets its new messages rejected (backpressure)
+ * instead of piling up work behind a slow engine transaction.
+ */
+@Component
+@Slf4j
+public class SessionMessagePipeline {
+
+    // Tasks run for one session before its queue yields the worker to other sessions
+    private static final int DRAIN_BATCH = 16;
+
+    private final ThreadPoolExecutor workers;
+    private final int maxQueueDepth;
+    private final Map<String, SessionQueue> queues = new ConcurrentHashMap<>();
+
+    public SessionMessagePipeline(@Value("${gps.websocket.worker-threads:8}") int workerThreads,
+                                  @Value("${gps.websocket.session-queue-depth:32}") int maxQueueDepth) {
+        this.maxQueueDepth = maxQueueDepth;
+        // At most one drain task per session is queued, so the pool queue is bounded by the open sessions
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new WorkerThreadFactory());
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Creates the queue of a new session; tasks are only accepted between open and close
+     */
+    public void open(String sessionId) {
+        queues.putIfAbsent(sessionId, new SessionQueue(sessionId));
+    }
+
+    /**
+     * Appends a task to the session queue. Returns false, without running it, when the session
+     * already has {@code gps.websocket.session-queue-depth} tasks pending, or is not open.
+     */
+    public boolean submit(String sessionId, Runnable task) {
+        // A task racing close() finds the queue gone or closed, and no queue is created for a dead session
+        SessionQueue queue = queues.get(sessionId);
+        return queue != null && queue.offer(task);
+    }
+
+    /**
+     * Drops the pending tasks of a closed session; a task already running is left to finish
+     */
+    public void close(String sessionId) {
+        SessionQueue queue = queues.remove(sessionId);
+        if (queue != null) {
+            int dropped = queue.close();
+            if (dropped > 0) {
+                log.debug("[GPS Pipeline] Dropped {} pending messages of closed session {}", dropped, sessionId);
+            }
+        }
+    }
+
+    public int getPendingMessages(String sessionId) {
+        SessionQueue queue = queues.get(sessionId);
+        return queue != null ? queue.size() : 0;
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "sessions", queues.size(),
+                "pendingMessages", queues.values().stream().mapToInt(SessionQueue::size).sum(),
+                "activeWorkers", workers.getActiveCount(),
+                "workerThreads", workers.getMaximumPoolSize(),
+                "maxQueueDepth", maxQueueDepth
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class SessionQueue {
+        private final String sessionId;
+        private final Queue<Runnable> pending = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean closed;
+
+        private SessionQueue(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        synchronized boolean offer(Runnable task) {
+            if (closed || pending.size() >= maxQueueDepth) {
+                return false;
+            }
+            pending.add(task);
+            if (!scheduled) {
+                scheduled = schedule();
+            }
+            return true;
+        }
+
+        synchronized int close() {
+            closed = true;
+            int dropped = pending.size();
+            pending.clear();
+            return dropped;
+        }
+
+        synchronized int size() {
+            return pending.size();
+        }
+
+        private boolean schedule() {
+            try {
+                workers.execute(this::drain);
+                return true;
+            } catch (RejectedExecutionException e) {
+                log.warn("[GPS Pipeline] Worker pool shut down, dropping messages of session {}", sessionId);
+                pending.clear();
+                return false;
+            }
+        }
+
+        private void drain() {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                Runnable task;
+                synchronized (this) {
+                    task = pending.poll();
+                    if (task == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.error("[GPS Pipeline] Unhandled error processing message of session {}", sessionId, t);
+                }
+            }
+
+            // Still work left: go to the back of the pool queue so other sessions get a turn
+            synchronized (this) {
+                scheduled = !pending.isEmpty() && schedule();
+            }
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gps-ws-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.unicam.intermediate.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.unicam.intermediate.models.enums.GeometryEngine;
+import org.unicam.intermediate.models.environmental.LocationArea;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Point-in-polygon throughput of the two {@link GeometryEngine}s on outlines of growing size.
+ *
+ * Plain main, not a unit test (surefire does not pick it up). Run after {@code mvn test-compile}:
+ * <pre>
+ * java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *      org.unicam.intermediate.benchmark.GeometryEngineBenchmark [queries] [vertices...]
+ * </pre>
+ * Outlines are seeded, irregular star polygons (as concave as a building footprint traced by hand)
+ * and queries are uniform in their bounding box, so about half land inside. Each engine gets warm-up
+ * rounds before the measured ones. The number of points on which the engines disagree is printed too:
+ * they are the points inside the winding engine's on-edge band, which widens as edges get shorter.
+ */
+public class GeometryEngineBenchmark {
+
+    private static final long SEED = 42;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) {
+        // The winding engine logs edge hits at DEBUG, which would be measured too
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        int queries = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int[] vertexCounts = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{8, 64, 512, 4096};
+
+        System.out.printf(Locale.ROOT, "%8s %14s %14s %8s %10s%n",
+                "vertices", "winding ns/op", "jts ns/op", "speedup", "disagree");
+        for (int vertices : vertexCounts) {
+            List<List<Double>> outline = starOutline(vertices, new Random(SEED + vertices));
+            LocationArea winding = new LocationArea(outline, GeometryEngine.WINDING_NUMBER);
+            LocationArea jts = new LocationArea(outline, GeometryEngine.JTS_PREPARED);
+            double[][] points = queryPoints(outline, queries, new Random(SEED));
+
+            double windingNs = measure(winding, points);
+            double jtsNs = measure(jts, points);
+            int disagree = 0;
+            for (double[] p : points) {
+                if (winding.contains(p[0], p[1]) != jts.contains(p[0], p[1])) {
+                    disagree++;
+                }
+            }
+            System.out.printf(Locale.ROOT, "%8d %14.1f %14.1f %7.1fx %10d%n",
+                    vertices, windingNs, jtsNs, windingNs / jtsNs, disagree);
+        }
+    }
+
+    // Best round in ns per contains() call
+    private static double measure(LocationArea area, double[][] points) {
+        long inside = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            inside += run(area, points);
+        }
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            inside += run(area, points);
+            best = Math.min(best, (double) (System.nanoTime() - start) / points.length);
+        }
+        // Keeps the JIT from dropping the calls
+        if (inside == Long.MIN_VALUE) {
+            System.out.println(inside);
+        }
+        return best;
+    }
+
+    private static int run(LocationArea area, double[][] points) {
+        int inside = 0;
+        for (double[] p : points) {
+            if (area.contains(p[0], p[1])) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+
+    // Closed ring of [lon, lat] around Camerino, radius varying between 40% and 100% of ~100 m
+    private static List<List<Double>> starOutline(int vertices, Random random) {
+        double centerLon = 13.0680, centerLat = 43.1390, radius = 0.001;
+        List<List<Double>> ring = new ArrayList<>(vertices + 1);
+        for (int i = 0; i < vertices; i++) {
+            double angle = 2 * Math.PI * i / vertices;
+            double r = radius * (0.4 + 0.6 * random.nextDouble());
+            ring.add(List.of(centerLon + r * Math.cos(angle), centerLat + r * Math.sin(angle)));
+        }
+        ring.add(ring.get(0));
+        return ring;
+    }
+
+    // {lat, lon} pairs, as contains() takes them
+    private static double[][] queryPoints(List<List<Double>> outline, int count, Random random) {
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        for (List<Double> coord : outline) {
+            minLon = Math.min(minLon, coord.get(0));
+            maxLon = Math.max(maxLon, coord.get(0));
+            minLat = Math.min(minLat, coord.get(1));
+            maxLat = Math.max(maxLat, coord.get(1));
+        }
+        double[][] points = new double[count][];
+        for (int i = 0; i < count; i++) {
+            points[i] = new double[]{
+                    minLat + random.nextDouble() * (maxLat - minLat),
+                    minLon + random.nextDouble() * (maxLon - minLon)};
+        }
+        return points;
+    }
+}